@@ -18,12 +18,16 @@ java {
 
 application {
     mainClass = "io.peripage.Main"
+    // Class-data sharing archive shipped next to the jars, see the cdsArchive task.
+    // Ignored (silently) when it does not match the JVM or the class path.
+    applicationDefaultJvmArgs = listOf("-XX:SharedArchiveFile=__APP_HOME__/lib/peripage.jsa", "-Xlog:cds=off,cds+dynamic=off")
 }
 
 dependencies {
     implementation("io.ultreia:bluecove:2.1.1")
-    implementation("com.google.guava:guava:32.1.3-jre")
     implementation("net.glxn:qrgen:1.4")
+    // Used directly by RasterHelper, same version as the one qrgen brings
+    implementation("com.google.zxing:core:3.0.0")
 
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.2")
     testImplementation("org.mockito:mockito-core:5.6.0")
@@ -33,3 +37,70 @@ dependencies {
 tasks.test {
     useJUnitPlatform()
 }
+
+// Jars laid out like in the distribution: a class-data sharing archive only applies to the class path it was
+// dumped with, relocated or not.
+val cdsLib = layout.buildDirectory.dir("cds/lib")
+val cdsArchiveFile = layout.buildDirectory.file("cds/peripage.jsa")
+
+val cdsTrainingLib by tasks.registering(Sync::class) {
+    from(tasks.jar)
+    from(configurations.runtimeClasspath)
+    into(cdsLib)
+}
+
+val cdsClasspath = files(provider {
+    (listOf(tasks.jar.get().archiveFile.get().asFile) + configurations.runtimeClasspath.get().files)
+        .map { cdsLib.get().file(it.name).asFile }
+})
+
+val cdsArchive by tasks.registering(JavaExec::class) {
+    description = "Builds the class-data sharing archive from a training run against a fake printer."
+    group = "distribution"
+    dependsOn(cdsTrainingLib)
+    classpath = cdsClasspath
+    mainClass = "io.peripage.StartupBenchmark"
+    args("all")
+    jvmArgs("-Djava.awt.headless=true", "-XX:ArchiveClassesAtExit=${cdsArchiveFile.get().asFile}")
+    outputs.file(cdsArchiveFile)
+}
+
+distributions {
+    main {
+        contents {
+            from(cdsArchive) {
+                into("lib")
+            }
+        }
+    }
+}
+
+tasks.startScripts {
+    doLast {
+        unixScript.writeText(unixScript.readText().replace("__APP_HOME__", "'\"\$APP_HOME\"'"))
+        windowsScript.writeText(windowsScript.readText().replace("__APP_HOME__", "%APP_HOME%"))
+    }
+}
+
+tasks.named<JavaExec>("run") {
+    // The archive only matches the distribution class path
+    jvmArgs = listOf()
+}
+
+val startupBenchmarkWithoutArchive by tasks.registering(JavaExec::class) {
+    description = "Measures the time to the first byte sent to a fake printer, without class-data sharing archive."
+    group = "verification"
+    dependsOn(cdsTrainingLib)
+    classpath = cdsClasspath
+    mainClass = "io.peripage.StartupBenchmark"
+    jvmArgs("-Djava.awt.headless=true")
+}
+
+tasks.register<JavaExec>("startupBenchmark") {
+    description = "Measures the time to the first byte sent to a fake printer, with and without class-data sharing archive."
+    group = "verification"
+    dependsOn(startupBenchmarkWithoutArchive, cdsArchive)
+    classpath = cdsClasspath
+    mainClass = "io.peripage.StartupBenchmark"
+    jvmArgs("-Djava.awt.headless=true", "-XX:SharedArchiveFile=${cdsArchiveFile.get().asFile}")
+}
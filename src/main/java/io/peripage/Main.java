@@ -1,13 +1,19 @@
 package io.peripage;
 
+import io.peripage.daemon.PrintDaemon;
 import io.peripage.domain.Device;
 import io.peripage.domain.PrinterType;
 import io.peripage.service.PrinterService;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length > 0 && "daemon".equals(args[0])) {
+            PrintDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 
         PrinterService printer = new PrinterService("04:7F:0E:B0:CA:57", PrinterType.A40p);
         printer.connect();
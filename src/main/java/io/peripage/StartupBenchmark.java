@@ -0,0 +1,100 @@
+package io.peripage;
+
+import io.peripage.domain.PrinterType;
+import io.peripage.service.ChannelTransportService;
+import io.peripage.service.PrinterService;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Measures the time from JVM start to the first bytes received by a fake printer listening on localhost:
+ * the reset request sent on connect, then the first raster header. Used by the Gradle `startupBenchmark`
+ * task, and as the training run of the class-data sharing archive built by the `cdsArchive` task.
+ *
+ * Usage: `StartupBenchmark [qr|image|text|all]`, `qr` by default.
+ */
+public class StartupBenchmark {
+
+    private static final int QR_SIZE = 200;
+
+    private static volatile long firstByteMillis;
+    private static volatile long firstRasterMillis;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        String workload = args.length > 0 ? args[0] : "qr";
+
+        try (ServerSocketChannel fakePrinter = ServerSocketChannel.open()) {
+            fakePrinter.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread receiver = new Thread(() -> receive(fakePrinter), "fake-printer");
+            receiver.setDaemon(true);
+            receiver.start();
+
+            PrinterService printer = new PrinterService(PrinterType.A6p,
+                    new ChannelTransportService((InetSocketAddress) fakePrinter.getLocalAddress()));
+            printer.connect();
+            if ("qr".equals(workload) || "all".equals(workload)) {
+                printer.printQR("https://github.com/anthony-foulfoin/peripage-java", QR_SIZE);
+            }
+            if ("image".equals(workload) || "all".equals(workload)) {
+                printer.printPaddedImage(gradient());
+            }
+            if ("text".equals(workload) || "all".equals(workload)) {
+                printer.printlnASCII("Peripage startup benchmark");
+                printer.flushASCII();
+            }
+            printer.disconnect();
+            receiver.join();
+        }
+
+        long startMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("workload: " + workload);
+        System.out.println("time-to-first-byte: " + (firstByteMillis - startMillis) + " ms");
+        if (firstRasterMillis != 0) {
+            System.out.println("time-to-first-raster: " + (firstRasterMillis - startMillis) + " ms");
+        }
+    }
+
+    /**
+     * Read everything sent to the fake printer, noting when the first byte and the first raster
+     * header `1d7630` arrive.
+     */
+    private static void receive(ServerSocketChannel fakePrinter) {
+        try (SocketChannel connection = fakePrinter.accept()) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            int previous = 0;
+            while (connection.read(buffer) >= 0) {
+                if (firstByteMillis == 0 && buffer.position() > 0) {
+                    firstByteMillis = System.currentTimeMillis();
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    previous = (previous << 8 | buffer.get() & 0xff) & 0xffffff;
+                    if (firstRasterMillis == 0 && previous == 0x1d7630) {
+                        firstRasterMillis = System.currentTimeMillis();
+                    }
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Fake printer failed: " + e.getMessage());
+        }
+    }
+
+    private static BufferedImage gradient() {
+        BufferedImage image = new BufferedImage(QR_SIZE, QR_SIZE / 2, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); x++) {
+            int level = x * 255 / (image.getWidth() - 1);
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, level << 16 | level << 8 | level);
+            }
+        }
+        return image;
+    }
+}
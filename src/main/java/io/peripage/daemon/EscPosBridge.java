@@ -0,0 +1,143 @@
+package io.peripage.daemon;
+
+import io.peripage.service.EscPosParser;
+import io.peripage.service.EscPosTranslator;
+import io.peripage.service.PrintQueue;
+import io.peripage.service.PrinterService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+/**
+ * Raw TCP bridge letting point of sale software print on a Peripage as on a port 9100 ESC/POS printer.
+ * Each connection becomes a job of the printer queue. Once the job starts, the stream is parsed and
+ * printed while it arrives, see {@link EscPosParser} and {@link EscPosTranslator}, so memory stays bounded
+ * to one read buffer and one raster chunk whatever the size of the stream. Connections waiting for their
+ * job are not read, the sender is held back by TCP flow control.
+ *
+ * Point of sale software often keeps its connection open between receipts, so a job also ends once the
+ * connection stayed idle for the idle timeout, letting the other jobs of the printer print.
+ */
+public class EscPosBridge implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 9100;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final PrintQueue queue;
+
+    private ServerSocket server;
+    private Thread acceptor;
+    private volatile Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * @param queue queue of the printer receiving the streams
+     */
+    public EscPosBridge(PrintQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Start listening on the loopback interface.
+     * @param port the TCP port, usually {@link #DEFAULT_PORT}
+     * @throws IOException If the port could not be bound
+     */
+    public void start(int port) throws IOException {
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        acceptor = new Thread(this::accept, "escpos-bridge-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Change the time after which an idle connection ends its job, {@link #DEFAULT_IDLE_TIMEOUT} by default.
+     * @param idleTimeout time without receiving anything, positive
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * The bound port, useful when started on port 0.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        if (server != null) {
+            server.close();
+        }
+        if (acceptor != null) {
+            acceptor.join();
+        }
+    }
+
+    /**
+     * Parse an ESC/POS stream until its end, or until a read times out, and print it.
+     * @param input the stream
+     * @param printer the printer
+     * @throws IOException If the stream could not be read or the printer could not print
+     * @throws InterruptedException
+     */
+    public static void print(InputStream input, PrinterService printer) throws IOException, InterruptedException {
+        EscPosTranslator translator = new EscPosTranslator(printer);
+        EscPosParser parser = new EscPosParser(translator);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                parser.parse(buffer, 0, read);
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle connection, what was received is printed
+        }
+        parser.close();
+        translator.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                // Closed
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not accept ESC/POS connection: " + e.getMessage());
+                continue;
+            }
+            queue.submit("escpos " + socket.getRemoteSocketAddress(), printer -> {
+                socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, idleTimeout.toMillis())));
+                try (InputStream input = socket.getInputStream()) {
+                    print(input, printer);
+                }
+            }).getCompletion().whenComplete((done, error) -> {
+                // Also closes the connections of the jobs cancelled before they started
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close ESC/POS connection: " + e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.peripage.domain;
+
+import io.peripage.helper.ByteHelper;
+import io.peripage.helper.ImageHelper;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ReceiptTemplate} rasterized for a printer type.
+ * The static layout is kept as packed rows of `PrinterType.getRowBytes()` bytes. Rendering copies
+ * these rows and patches the area of every variable field. The packed bits of a field are kept
+ * for its last value, so a field whose value did not change since the previous print is not
+ * rendered again.
+ */
+public class CompiledTemplate {
+
+    private final PrinterType printerType;
+    private final byte[] staticRaster;
+    private final int height;
+    private final List<CompiledField> fields = new ArrayList<>();
+
+    CompiledTemplate(BufferedImage layout, List<TemplateField> templateFields, PrinterType printerType) {
+        this.printerType = printerType;
+
+        int rowWidth = printerType.getRowWidth();
+        BufferedImage img = ImageHelper.convertToReversedBlackAndWhite(layout, rowWidth);
+        double scale = (double) img.getWidth() / layout.getWidth();
+        int xOffset = (rowWidth - img.getWidth()) / 2;
+        this.height = img.getHeight();
+        this.staticRaster = ImageHelper.getRawImageData(ImageHelper.centerPadImage(img, rowWidth));
+
+        for (TemplateField field : templateFields) {
+            fields.add(new CompiledField(field,
+                    xOffset + (int) Math.round(field.getX() * scale),
+                    (int) Math.round(field.getY() * scale),
+                    Math.max(1, (int) Math.round(field.getWidth() * scale)),
+                    Math.max(1, (int) Math.round(field.getHeight() * scale))));
+        }
+    }
+
+    /**
+     * Render the template with the given field values.
+     * Fields without value keep the content of the static layout.
+     * @param values value of each field, by field name
+     * @return the packed rows of the template, `PrinterType.getRowBytes()` bytes per row
+     * @throws IOException If a field could not be rendered
+     */
+    public byte[] render(Map<String, String> values) throws IOException {
+        byte[] raster = staticRaster.clone();
+        int rowBytes = printerType.getRowBytes();
+
+        for (CompiledField field : fields) {
+            String value = values.get(field.template.getName());
+            if (value == null) {
+                continue;
+            }
+            byte[] bits = field.bits(value);
+            ByteHelper.copyBits(bits, field.stride, field.width, field.height, raster, rowBytes, field.x, field.y);
+        }
+        return raster;
+    }
+
+    public PrinterType getPrinterType() {
+        return printerType;
+    }
+
+    /**
+     * Height of the template in dots (number of rows).
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * A field placed on the printer raster, with the packed bits of its last rendered value.
+     */
+    private static class CompiledField {
+
+        private final TemplateField template;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int stride;
+
+        private String lastValue;
+        private byte[] lastBits;
+
+        CompiledField(TemplateField template, int x, int y, int width, int height) {
+            this.template = template;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.stride = (width + 7) / 8;
+        }
+
+        synchronized byte[] bits(String value) throws IOException {
+            if (!value.equals(lastValue)) {
+                BufferedImage img = template.getRenderer().render(value, width, height);
+                img = ImageHelper.convertToReversedBlackAndWhite(img, width);
+                lastBits = ImageHelper.getRawImageData(ImageHelper.leftPadImage(img, width));
+                lastValue = value;
+            }
+            return lastBits;
+        }
+    }
+}
@@ -9,14 +9,52 @@ import java.util.Arrays;
 
 public class Device {
 
+    /**
+     * Way the queries and settings of a device reach the printer. The printer answers on the same input
+     * stream as every other query, so a {@link io.peripage.service.PrinterService} sends them between its
+     * print commands and never while another answer is awaited.
+     */
+    public interface Link {
+
+        /**
+         * Send bytes to the printer without response.
+         * @param request the bytes to send
+         * @throws IOException
+         */
+        void tell(byte[] request) throws IOException;
+
+        /**
+         * Send bytes to the printer and receive its response.
+         * @param request the bytes to send
+         * @return the response, possibly empty
+         * @throws IOException
+         * @throws InterruptedException
+         */
+        byte[] ask(byte[] request) throws IOException, InterruptedException;
+    }
+
     private final PrinterType printerType;
     private final String mac;
-    private final TransportService transportService;
+    private final Link link;
 
     public Device(String mac, PrinterType printerType, TransportService transportService) {
+        this(mac, printerType, new Link() {
+            @Override
+            public void tell(byte[] request) throws IOException {
+                transportService.tellPrinter(request);
+            }
+
+            @Override
+            public byte[] ask(byte[] request) throws IOException, InterruptedException {
+                return transportService.askPrinter(request);
+            }
+        });
+    }
+
+    public Device(String mac, PrinterType printerType, Link link) {
         this.printerType = printerType;
         this.mac = mac;
-        this.transportService = transportService;
+        this.link = link;
     }
 
     /**
@@ -28,7 +66,7 @@ public class Device {
      * @throws IOException
      */
     public String getIP() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff20f0");
+        return askString("10ff20f0");
     }
 
     /**
@@ -40,7 +78,7 @@ public class Device {
      * @throws IOException
      */
     public String getName() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff3011");
+        return askString("10ff3011");
     }
 
     /**
@@ -52,7 +90,7 @@ public class Device {
      * @throws IOException
      */
     public String getSerialNumber() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff20f2");
+        return askString("10ff20f2");
     }
 
     /**
@@ -64,7 +102,7 @@ public class Device {
      * @throws IOException
      */
     public String getFirmware() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff20f1");
+        return askString("10ff20f1");
     }
 
     /**
@@ -76,7 +114,7 @@ public class Device {
      * @throws IOException
      */
     public int getBattery() throws IOException, InterruptedException {
-        byte[] response = this.transportService.askPrinter(ByteHelper.hexStringToByteArray("10ff50f1"));
+        byte[] response = this.link.ask(ByteHelper.hexStringToByteArray("10ff50f1"));
         return response[1];
     }
 
@@ -89,7 +127,7 @@ public class Device {
      * @throws IOException
      */
     public String getHardware() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff3010");
+        return askString("10ff3010");
     }
 
     /**
@@ -102,7 +140,7 @@ public class Device {
      * @throws IOException
      */
     public String getMAC() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff3012");
+        return askString("10ff3012");
     }
 
     /**
@@ -119,7 +157,7 @@ public class Device {
      * @throws IOException
      */
     public String getFull() throws IOException, InterruptedException {
-        return this.transportService.askPrinterFromHexToString("10ff70f100");
+        return askString("10ff70f100");
     }
 
     /**
@@ -148,9 +186,9 @@ public class Device {
         }
 
         if (wait) {
-            this.transportService.askPrinter(request);
+            this.link.ask(request);
         } else {
-            this.transportService.tellPrinter(request);
+            this.link.tell(request);
         }
     }
 
@@ -158,6 +196,10 @@ public class Device {
         return printerType;
     }
 
+    private String askString(String hexData) throws IOException, InterruptedException {
+        return ByteHelper.toStringAscii(this.link.ask(ByteHelper.hexStringToByteArray(hexData)));
+    }
+
 
     /**
      * WARNING UNTESTED AND DANGEROUS TO USE
@@ -185,9 +227,9 @@ public class Device {
     private void setDeviceSerialNumber(String serial_number, boolean wait) throws IOException, InterruptedException {
         byte[] request = ByteHelper.hexStringToByteArray("10ff20f4" + ByteHelper.asciiToHex(serial_number) + "00");
         if (wait) {
-            transportService.askPrinter(request);
+            link.ask(request);
         } else {
-            transportService.tellPrinter(request);
+            link.tell(request);
         }
     }
 
@@ -211,9 +253,9 @@ public class Device {
         timeout = Math.max(Math.min(0xfff0, timeout), 0x0001);
         byte[] request = ByteHelper.hexStringToByteArray("10ff12" + Arrays.toString(ByteHelper.intToBigEndianBytes(timeout, 2)));
         if (wait) {
-            transportService.askPrinter(request);
+            link.ask(request);
         } else {
-            transportService.tellPrinter(request);
+            link.tell(request);
         }
     }
 
@@ -0,0 +1,20 @@
+package io.peripage.domain;
+
+/**
+ * Lifecycle of a queued print job.
+ */
+public enum JobStatus {
+    QUEUED,
+    PRINTING,
+    /**
+     * Interrupted at a chunk boundary by a job of higher priority, resumes once it is done.
+     */
+    PREEMPTED,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,144 @@
+package io.peripage.domain;
+
+import io.peripage.helper.ByteHelper;
+import io.peripage.helper.ImageHelper;
+import io.peripage.raster.PackedBitmap;
+import io.peripage.raster.RasterHelper;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A composite print job made of images, QR codes and paper feeds, already
+ * converted into printer rows. All the sections of the job are concatenated
+ * into a single raster stream so the printer receives them as one continuous
+ * transmission, with a single reset and no idle gap between sections.
+ */
+public class PrintJob {
+
+    private final PrinterType printerType;
+    private final List<byte[]> rows;
+
+    private PrintJob(PrinterType printerType, List<byte[]> rows) {
+        this.printerType = printerType;
+        this.rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Create a new builder for a job targeting the given printer type.
+     * @param printerType Printer type the rows are sized for
+     * @return A new empty builder
+     */
+    public static Builder builder(PrinterType printerType) {
+        return new Builder(printerType);
+    }
+
+    public PrinterType getPrinterType() {
+        return printerType;
+    }
+
+    /**
+     * Rows of the job, each of them exactly `PrinterType.getRowBytes()` long.
+     */
+    public List<byte[]> getRows() {
+        return rows;
+    }
+
+    /**
+     * Height of the job in dots (number of rows).
+     */
+    public int getHeight() {
+        return rows.size();
+    }
+
+    public static class Builder {
+
+        private final PrinterType printerType;
+        private final List<byte[]> rows = new ArrayList<>();
+
+        private Builder(PrinterType printerType) {
+            this.printerType = printerType;
+        }
+
+        /**
+         * Append an image, converted to black and white and centered on the row like
+         * {@code PrinterService.printPaddedImage} does.
+         * @param img The image to append
+         * @return This builder
+         */
+        public Builder image(BufferedImage img) {
+            rows.addAll(ImageHelper.toPaddedRows(img, printerType.getRowWidth()));
+            return this;
+        }
+
+        /**
+         * Append a QR code of the default size.
+         * @param text The text to encode
+         * @return This builder
+         * @throws IOException If the QR code could not be generated
+         */
+        public Builder qr(String text) throws IOException {
+            return qr(text, ImageHelper.DEFAULT_QR_SIZE);
+        }
+
+        /**
+         * Append a QR code.
+         * @param text The text to encode
+         * @param size The size of the qrcode
+         * @return This builder
+         * @throws IOException If the QR code could not be generated
+         */
+        public Builder qr(String text, int size) throws IOException {
+            return bitmap(RasterHelper.qrCode(text, Math.min(size, printerType.getRowWidth())));
+        }
+
+        /**
+         * Append a 1-bit bitmap centered on the row, without any conversion.
+         * @param bitmap The bitmap to append, 1 bits are black
+         * @return This builder
+         */
+        public Builder bitmap(PackedBitmap bitmap) {
+            if (bitmap.getWidth() < printerType.getRowWidth()) {
+                bitmap = RasterHelper.centerPad(bitmap, printerType.getRowWidth());
+            }
+            int stride = bitmap.getStride();
+            for (int y = 0; y < bitmap.getHeight(); y++) {
+                rows.add(ByteHelper.padRowBytes(printerType.getRowBytes(), Arrays.copyOfRange(bitmap.getData(), y * stride, (y + 1) * stride)));
+            }
+            return this;
+        }
+
+        /**
+         * Append a paper feed. Inside a raster stream the feed is encoded as blank rows
+         * instead of a separate `1b4a` request, so it does not break the transmission.
+         * @param size feed size in dots
+         * @return This builder
+         */
+        public Builder feed(int size) {
+            for (int i = 0; i < size; i++) {
+                rows.add(new byte[printerType.getRowBytes()]);
+            }
+            return this;
+        }
+
+        /**
+         * Append raw rows. Rows are truncated/padded to `PrinterType.getRowBytes()`.
+         * @param rowBytesList rows to append, 8 pixels per byte
+         * @return This builder
+         */
+        public Builder rows(List<byte[]> rowBytesList) {
+            for (byte[] row : rowBytesList) {
+                rows.add(ByteHelper.padRowBytes(printerType.getRowBytes(), row));
+            }
+            return this;
+        }
+
+        public PrintJob build() {
+            return new PrintJob(printerType, new ArrayList<>(rows));
+        }
+    }
+}
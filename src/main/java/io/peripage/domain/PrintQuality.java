@@ -0,0 +1,39 @@
+package io.peripage.domain;
+
+/**
+ * Quality tier of an image job, trading print quality for conversion and transmission time.
+ */
+public enum PrintQuality {
+    /**
+     * Floyd-Steinberg error diffusion at full resolution.
+     */
+    HIGH(1),
+    /**
+     * Ordered (Bayer) dithering at full resolution, cheaper and without error propagation.
+     */
+    STANDARD(1),
+    /**
+     * Plain threshold with half the rows, each row sent twice to keep the image height.
+     */
+    DRAFT(2);
+
+    private final int rowReduction;
+
+    PrintQuality(int rowReduction) {
+        this.rowReduction = rowReduction;
+    }
+
+    /**
+     * Number of printed dot lines per converted row.
+     */
+    public int getRowReduction() {
+        return rowReduction;
+    }
+
+    /**
+     * The next cheaper tier, or this one for {@link #DRAFT}.
+     */
+    public PrintQuality cheaper() {
+        return this == DRAFT ? DRAFT : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,83 @@
+package io.peripage.domain;
+
+import java.util.Objects;
+
+/**
+ * Last known state of a printer, published by {@link io.peripage.service.StatusPoller}. Instances are
+ * immutable, so they can be read from any thread without locking.
+ */
+public final class PrinterStatus {
+
+    public static final int UNKNOWN_BATTERY = -1;
+
+    /**
+     * State before the first poll.
+     */
+    public static final PrinterStatus UNKNOWN = new PrinterStatus(false, UNKNOWN_BATTERY, null);
+
+    private final boolean connected;
+    private final int battery;
+    private final String name;
+
+    /**
+     * @param connected true if the printer is connected
+     * @param battery battery percentage, or {@link #UNKNOWN_BATTERY}
+     * @param name device name, see {@link Device#getName()}, or null if unknown
+     */
+    public PrinterStatus(boolean connected, int battery, String name) {
+        this.connected = connected;
+        this.battery = battery;
+        this.name = name;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Battery percentage from the last answered query, or {@link #UNKNOWN_BATTERY}.
+     */
+    public int getBattery() {
+        return battery;
+    }
+
+    /**
+     * Device name from the last answered query, or null.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public PrinterStatus withConnected(boolean connected) {
+        return new PrinterStatus(connected, battery, name);
+    }
+
+    public PrinterStatus withBattery(int battery) {
+        return new PrinterStatus(connected, battery, name);
+    }
+
+    public PrinterStatus withName(String name) {
+        return new PrinterStatus(connected, battery, name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PrinterStatus other)) {
+            return false;
+        }
+        return connected == other.connected && battery == other.battery && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(connected, battery, name);
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterStatus{connected=" + connected + ", battery=" + battery + ", name=" + name + "}";
+    }
+}
@@ -5,18 +5,24 @@ package io.peripage.domain;
  * printing interface and easy adding new printer models.
  */
 public enum PrinterType {
-        A6(384),
-        A6p( 576),
-        A40(1728),
-        A40p( 1848);
+        A6(384, 1536),
+        A6p( 576, 1024),
+        A40(1728, 336),
+        A40p( 1848, 320);
 
         /**
          * The max number of dots "pixels" the printer can print on a line.
          */
         private final int rowWidth;
 
-        PrinterType(int rowWidth) {
+        /**
+         * Number of rows sent under a single raster header in large raster mode.
+         */
+        private final int largeRasterChunkRows;
+
+        PrinterType(int rowWidth, int largeRasterChunkRows) {
             this.rowWidth = rowWidth;
+            this.largeRasterChunkRows = largeRasterChunkRows;
         }
 
         /**
@@ -37,6 +43,16 @@ public enum PrinterType {
             return rowWidth;
         }
 
+        /**
+         * Chunk height used in large raster mode.
+         * The raster header encodes the height on 2 bytes, so the printer accepts chunks
+         * up to `0xffff` rows. The default value keeps each chunk around 72 KB whatever
+         * the row width is.
+         */
+        public int getLargeRasterChunkRows() {
+            return largeRasterChunkRows;
+        }
+
         /**
          * Get row_characters spec for current printer.
          * Internal ASCII printing mode allows printer to output the raw ASCII
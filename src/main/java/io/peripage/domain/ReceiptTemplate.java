@@ -0,0 +1,40 @@
+package io.peripage.domain;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A receipt or label layout made of a static image and a few variable fields.
+ * The static part is rasterized only once per printer type by {@link #compile(PrinterType)},
+ * each print then only renders its variable fields.
+ */
+public class ReceiptTemplate {
+
+    private final BufferedImage layout;
+    private final List<TemplateField> fields;
+    private final Map<PrinterType, CompiledTemplate> compiled = new EnumMap<>(PrinterType.class);
+
+    /**
+     * @param layout static part of the template: logo, borders, captions...
+     * @param fields variable fields drawn over the layout, in layout pixel coordinates
+     */
+    public ReceiptTemplate(BufferedImage layout, List<TemplateField> fields) {
+        this.layout = layout;
+        this.fields = List.copyOf(fields);
+    }
+
+    /**
+     * Get the template compiled for a printer type, compiling it on first use.
+     * @param printerType Printer type
+     * @return the compiled template
+     */
+    public synchronized CompiledTemplate compile(PrinterType printerType) {
+        return compiled.computeIfAbsent(printerType, type -> new CompiledTemplate(layout, fields, type));
+    }
+
+    public List<TemplateField> getFields() {
+        return fields;
+    }
+}
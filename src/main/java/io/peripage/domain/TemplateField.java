@@ -0,0 +1,121 @@
+package io.peripage.domain;
+
+import io.peripage.helper.ImageHelper;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * A variable area of a {@link ReceiptTemplate}, rendered for each print from a text value.
+ * Coordinates and size are expressed in pixels of the template layout image.
+ */
+public class TemplateField {
+
+    /**
+     * Render the value of a field into an image of the exact field size.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        BufferedImage render(String value, int width, int height) throws IOException;
+    }
+
+    private final String name;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final Renderer renderer;
+
+    public TemplateField(String name, int x, int y, int width, int height, Renderer renderer) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Field " + name + " must have a positive size");
+        }
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Create a field rendering its value as a single line of black text, vertically centered.
+     * @param name name of the field
+     * @param x left position in the layout
+     * @param y top position in the layout
+     * @param width width of the field
+     * @param height height of the field
+     * @param font font of the text
+     * @return the field
+     */
+    public static TemplateField text(String name, int x, int y, int width, int height, Font font) {
+        return new TemplateField(name, x, y, width, height, (value, w, h) -> {
+            BufferedImage img = newWhiteImage(w, h);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+            g2d.setColor(Color.BLACK);
+            g2d.setFont(font.deriveFont(font.getSize2D() * h / height));
+            FontMetrics metrics = g2d.getFontMetrics();
+            g2d.drawString(value, 0, (h - metrics.getHeight()) / 2 + metrics.getAscent());
+            g2d.dispose();
+            return img;
+        });
+    }
+
+    /**
+     * Create a square field rendering its value as a QR code.
+     * @param name name of the field
+     * @param x left position in the layout
+     * @param y top position in the layout
+     * @param size size of the QR code
+     * @return the field
+     */
+    public static TemplateField qr(String name, int x, int y, int size) {
+        return new TemplateField(name, x, y, size, size, (value, w, h) -> {
+            BufferedImage qr = ImageHelper.createQRImage(value, Math.min(w, h));
+            BufferedImage img = newWhiteImage(w, h);
+            Graphics2D g2d = img.createGraphics();
+            g2d.drawImage(qr, 0, 0, null);
+            g2d.dispose();
+            return img;
+        });
+    }
+
+    private static BufferedImage newWhiteImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return img;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+}
@@ -1,6 +1,5 @@
 package io.peripage.helper;
 
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HexFormat;
@@ -41,13 +40,73 @@ public class ByteHelper {
         return result;
     }
 
+    public static byte[] intToLittleEndianBytes(int value, int numBytes) {
+        byte[] result = new byte[numBytes];
+
+        for (int i = 0; i < numBytes; i++) {
+            result[i] = (byte) (value & 0xFF);
+            value >>= 8;
+        }
+
+        return result;
+    }
+
+    public static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays) {
+            length += array.length;
+        }
+
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+
+        return result;
+    }
+
     public static byte[] padRowBytes(int length, byte[] rowBytes) {
-        if (rowBytes.length < length) {
-            byte[] padding = new byte[length - rowBytes.length];
-            rowBytes = ByteBuffer.allocate(length).put(rowBytes).put(padding).array();
-        } else if (rowBytes.length > length) {
-            rowBytes = Arrays.copyOfRange(rowBytes, 0, length);
+        if (rowBytes.length != length) {
+            rowBytes = Arrays.copyOf(rowBytes, length);
         }
         return rowBytes;
     }
+
+    /**
+     * Copy a rectangle of packed 1-bit pixels (8 pixels per byte, most significant bit first)
+     * into another packed bitmap at any bit position, overwriting the destination pixels.
+     * Pixels falling outside the destination are clipped.
+     * @param src source bitmap
+     * @param srcStride bytes per row of the source
+     * @param width width of the rectangle in pixels
+     * @param height height of the rectangle in pixels
+     * @param dst destination bitmap
+     * @param dstStride bytes per row of the destination
+     * @param x horizontal position of the rectangle in the destination, in pixels
+     * @param y vertical position of the rectangle in the destination, in pixels
+     */
+    public static void copyBits(byte[] src, int srcStride, int width, int height, byte[] dst, int dstStride, int x, int y) {
+        int dstHeight = dst.length / dstStride;
+        int dstWidth = dstStride * 8;
+        for (int row = 0; row < height; row++) {
+            int dy = y + row;
+            if (dy < 0 || dy >= dstHeight) {
+                continue;
+            }
+            int srcRow = row * srcStride;
+            int dstRow = dy * dstStride;
+            for (int col = 0; col < width; col++) {
+                int dx = x + col;
+                if (dx < 0 || dx >= dstWidth) {
+                    continue;
+                }
+                int bit = (src[srcRow + (col >> 3)] >> (7 - (col & 7))) & 1;
+                int mask = 0x80 >> (dx & 7);
+                int index = dstRow + (dx >> 3);
+                dst[index] = (byte) (bit == 0 ? dst[index] & ~mask : dst[index] | mask);
+            }
+        }
+    }
 }
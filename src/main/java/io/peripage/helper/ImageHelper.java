@@ -1,15 +1,48 @@
 package io.peripage.helper;
 
+import io.peripage.raster.GrayBitmap;
+import io.peripage.raster.LabelItem;
+import io.peripage.raster.PackedBitmap;
+import io.peripage.raster.RasterHelper;
+import net.glxn.qrgen.QRCode;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Helper class for image manipulation.
  * */
 public class ImageHelper {
 
+    public static final int DEFAULT_QR_SIZE = 500;
+
+    /**
+     * Memory per pixel of the resized image during {@link #convertToReversedBlackAndWhite(BufferedImage, int)}:
+     * ARGB resize buffer (4), grayscale copy (1), Floyd-Steinberg grid of `Color3i` objects (about 28 with
+     * compressed references) and reversed copy (1), rounded up for the short-lived objects of the dithering.
+     */
+    private static final int CONVERSION_BYTES_PER_PIXEL = 40;
+
+    /**
+     * Memory per pixel of a decoded image, most decoders produce 3 or 4 bytes per pixel.
+     */
+    private static final int DECODED_BYTES_PER_PIXEL = 4;
+
     /**
      * Convert an image to a black and white image with inverted colors.
      * @param img The image to convert
@@ -23,6 +56,41 @@ public class ImageHelper {
         return img;
     }
 
+    /**
+     * Fast path for images that are already (nearly) black and white: logos, barcodes, line art,
+     * screenshots of text. Pixels are thresholded and packed directly and the image is downsized with
+     * nearest-neighbor sampling, skipping smooth resampling, grayscale conversion and dithering.
+     * Transparent pixels are white.
+     * @param img The image to convert
+     * @param rowWidth The width of printer row
+     * @return The 1-bit bitmap, or null if the image is not bilevel and must go through
+     * {@link #convertToReversedBlackAndWhite(BufferedImage, int)}
+     */
+    public static PackedBitmap toBilevelBitmap(BufferedImage img, int rowWidth) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        long tolerance = (long) (RasterHelper.BILEVEL_TOLERANCE * width * height);
+        long midGray = 0;
+        int[] line = new int[width];
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+
+        for (int y = 0; y < height; y++) {
+            img.getRGB(0, y, width, 1, line, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = line[x];
+                int level = (argb >>> 24) < 128 ? 255
+                        : (((argb >> 16) & 0xff) * 77 + ((argb >> 8) & 0xff) * 150 + (argb & 0xff) * 29) >> 8;
+                if (RasterHelper.isMidGray(level) && ++midGray > tolerance) {
+                    return null;
+                }
+                if (level < 128) {
+                    bitmap.set(x, y, true);
+                }
+            }
+        }
+        return RasterHelper.scaleNearest(bitmap, Math.min(width, rowWidth));
+    }
+
     /**
      * Resize an image to a new width and keep the aspect ratio.
      * @param img The image to resize
@@ -42,6 +110,7 @@ public class ImageHelper {
 
     /**
      * Returns the raw image data from a BufferedImage.
+     * Images that are not backed by bytes are first drawn on a 1-bit image of the same size.
      * @param image The image to get the raw data from
      * @return The raw image data
      */
@@ -50,7 +119,165 @@ public class ImageHelper {
         if (dataBuffer instanceof DataBufferByte dataBufferByte) {
             return dataBufferByte.getData();
         }
-        return null;
+        return getRawImageData(leftPadImage(image, image.getWidth()));
+    }
+
+    /**
+     * Convert an image to black and white, center it on the printer row and split it into rows.
+     * The conversion waits for its memory to be available, see {@link MemoryGovernor#global()}.
+     * @param img The image to convert
+     * @param rowWidth The width of printer row
+     * @return The rows of the image, `rowWidth / 8` bytes each
+     */
+    public static List<byte[]> toPaddedRows(BufferedImage img, int rowWidth) {
+        try (MemoryGovernor.Permit permit = MemoryGovernor.global().acquireUninterruptibly(estimatePeakBytes(img.getWidth(), img.getHeight(), rowWidth))) {
+            return convertToPaddedRows(img, rowWidth);
+        }
+    }
+
+    /**
+     * Decode an image, convert it to black and white, center it on the printer row and split it into rows.
+     * The decoding and the conversion wait for their memory to be available, see {@link MemoryGovernor#global()}.
+     * When the memory is not available right away, large images are downscaled while decoding, never below
+     * the printer width, instead of waiting for the full size memory.
+     * @param in The encoded image (PNG, JPEG, GIF, BMP...)
+     * @param rowWidth The width of printer row
+     * @return The rows of the image, `rowWidth / 8` bytes each
+     * @throws IOException If the image could not be decoded
+     */
+    public static List<byte[]> readPaddedRows(InputStream in, int rowWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                int subsampling = 1;
+                MemoryGovernor.Permit full = MemoryGovernor.global().tryAcquire(estimateReadBytes(width, height, 1, rowWidth));
+                if (full == null) {
+                    subsampling = Math.max(1, width / rowWidth);
+                }
+                try (MemoryGovernor.Permit permit = full != null ? full
+                        : MemoryGovernor.global().acquireUninterruptibly(estimateReadBytes(width, height, subsampling, rowWidth))) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    return convertToPaddedRows(reader.read(0, param), rowWidth);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Estimate the peak memory of the conversion of a decoded image by
+     * {@link #toPaddedRows(BufferedImage, int)} or {@link io.peripage.service.PrinterService#printPaddedImage(BufferedImage)}.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param rowWidth The width of printer row
+     * @return The estimated peak memory, in bytes
+     */
+    public static long estimatePeakBytes(int width, int height, int rowWidth) {
+        int newWidth = Math.min(width, rowWidth);
+        long newHeight = (long) ((double) newWidth / width * height);
+        long bilevelBytes = (long) width * height / 8;
+        return newWidth * newHeight * CONVERSION_BYTES_PER_PIXEL + bilevelBytes + 2L * (rowWidth / 8) * newHeight;
+    }
+
+    private static long estimateReadBytes(int width, int height, int subsampling, int rowWidth) {
+        int decodedWidth = (width + subsampling - 1) / subsampling;
+        int decodedHeight = (height + subsampling - 1) / subsampling;
+        return (long) decodedWidth * decodedHeight * DECODED_BYTES_PER_PIXEL + estimatePeakBytes(decodedWidth, decodedHeight, rowWidth);
+    }
+
+    private static List<byte[]> convertToPaddedRows(BufferedImage img, int rowWidth) {
+        byte[] imgBytes;
+        PackedBitmap bilevel = toBilevelBitmap(img, rowWidth);
+        if (bilevel != null) {
+            imgBytes = RasterHelper.centerPad(bilevel, rowWidth).getData();
+        } else {
+            img = convertToReversedBlackAndWhite(img, rowWidth);
+            img = centerPadImage(img, rowWidth);
+            imgBytes = getRawImageData(img);
+        }
+
+        List<byte[]> rows = new ArrayList<>();
+        int rowBytes = rowWidth / 8;
+        for (int i = 0; i < imgBytes.length; i += rowBytes) {
+            rows.add(Arrays.copyOfRange(imgBytes, i, Math.min(i + rowBytes, imgBytes.length)));
+        }
+        return rows;
+    }
+
+    /**
+     * Adapter from AWT images to the AWT-free raster core.
+     * @param img The image to convert
+     * @return The image as an 8-bit grayscale bitmap
+     */
+    public static GrayBitmap toGrayBitmap(BufferedImage img) {
+        BufferedImage gray = convertToGrayscaleImage(img);
+        byte[] pixels = new byte[gray.getWidth() * gray.getHeight()];
+        gray.getRaster().getDataElements(0, 0, gray.getWidth(), gray.getHeight(), pixels);
+        return new GrayBitmap(gray.getWidth(), gray.getHeight(), pixels);
+    }
+
+    /**
+     * Create a label item from an AWT image, dithered and downsized to the available width if needed.
+     * @param img The image
+     * @return The label item
+     */
+    public static LabelItem labelItem(BufferedImage img) {
+        return maxWidth -> RasterHelper.convertToBlackAndWhite(toGrayBitmap(img), maxWidth);
+    }
+
+    /**
+     * Create a label item from a block of text, one line per `\n`, drawn in black with the given font.
+     * @param text The text
+     * @param font The font
+     * @return The label item
+     */
+    public static LabelItem textLabelItem(String text, Font font) {
+        return maxWidth -> {
+            String[] lines = text.split("\n");
+            BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D probeGraphics = probe.createGraphics();
+            FontMetrics metrics = probeGraphics.getFontMetrics(font);
+            probeGraphics.dispose();
+
+            int width = 1;
+            for (String line : lines) {
+                width = Math.max(width, metrics.stringWidth(line));
+            }
+            BufferedImage img = new BufferedImage(Math.min(width, maxWidth), metrics.getHeight() * lines.length, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, img.getWidth(), img.getHeight());
+            g2d.setColor(Color.BLACK);
+            g2d.setFont(font);
+            for (int i = 0; i < lines.length; i++) {
+                g2d.drawString(lines[i], 0, i * metrics.getHeight() + metrics.getAscent());
+            }
+            g2d.dispose();
+            return RasterHelper.dither(toGrayBitmap(img));
+        };
+    }
+
+    /**
+     * Generate a QR code image.
+     * @param text The text to encode
+     * @param size The size of the qrcode
+     * @return The QR code image
+     * @throws IOException If the generated image could not be read
+     */
+    public static BufferedImage createQRImage(String text, int size) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        QRCode.from(text).withSize(size, size).writeTo(baos);
+        return ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
     }
 
     /**
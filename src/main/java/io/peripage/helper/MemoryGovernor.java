@@ -0,0 +1,181 @@
+package io.peripage.helper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounds the memory used by concurrent image conversions. A conversion asks for its estimated peak
+ * memory (see {@link ImageHelper#estimatePeakBytes(int, int, int)}) before allocating anything and waits,
+ * in arrival order, until it fits in the budget. A conversion larger than the whole budget is admitted
+ * once nothing else runs, so it is slowed down but never refused.
+ */
+public class MemoryGovernor {
+
+    private static final MemoryGovernor GLOBAL = new MemoryGovernor(Runtime.getRuntime().maxMemory() / 4);
+
+    private final Deque<Object> waiting = new ArrayDeque<>();
+    private long budgetBytes;
+    private long usedBytes;
+    private long peakBytes;
+
+    /**
+     * Memory reserved by an admitted conversion, given back on close.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final long bytes;
+        private boolean released;
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    /**
+     * @param budgetBytes memory the conversions may use at once
+     */
+    public MemoryGovernor(long budgetBytes) {
+        setBudgetBytes(budgetBytes);
+    }
+
+    /**
+     * The governor shared by the image conversions of {@link ImageHelper} and the printers, with a budget
+     * of a quarter of the max heap by default.
+     */
+    public static MemoryGovernor global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Wait until the memory is available and reserve it.
+     * @param bytes estimated peak memory of the conversion
+     * @return the permit to close once the conversion is done
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Permit acquire(long bytes) throws InterruptedException {
+        Object ticket = new Object();
+        synchronized (this) {
+            waiting.add(ticket);
+            try {
+                while (waiting.peek() != ticket || !fits(bytes)) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                waiting.remove(ticket);
+                notifyAll();
+                throw e;
+            }
+            waiting.poll();
+            return admit(bytes);
+        }
+    }
+
+    /**
+     * Like {@link #acquire(long)}, for callers that cannot be interrupted. The waits only depend on
+     * other conversions completing. An interrupt does not lose the place in line, and the interrupt status
+     * is kept.
+     * @param bytes estimated peak memory of the conversion
+     * @return the permit to close once the conversion is done
+     */
+    public Permit acquireUninterruptibly(long bytes) {
+        Object ticket = new Object();
+        boolean interrupted = false;
+        Permit permit;
+        synchronized (this) {
+            waiting.add(ticket);
+            // The ticket keeps its place in line across interrupts
+            while (waiting.peek() != ticket || !fits(bytes)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            waiting.poll();
+            permit = admit(bytes);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return permit;
+    }
+
+    /**
+     * Reserve the memory only if it is available right now and no other conversion is waiting.
+     * @param bytes estimated peak memory of the conversion
+     * @return the permit to close once the conversion is done, or null
+     */
+    public synchronized Permit tryAcquire(long bytes) {
+        if (!waiting.isEmpty() || !fits(bytes)) {
+            return null;
+        }
+        return admit(bytes);
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Change the budget. Waiting conversions are admitted if the budget grows.
+     * @param budgetBytes memory the conversions may use at once
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.budgetBytes = budgetBytes;
+        notifyAll();
+    }
+
+    /**
+     * Memory reserved by the conversions running now.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Highest memory reserved at once since the governor was created.
+     */
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * Number of conversions waiting for memory.
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    private boolean fits(long bytes) {
+        return usedBytes == 0 || usedBytes + bytes <= budgetBytes;
+    }
+
+    private Permit admit(long bytes) {
+        usedBytes += bytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+        // The next conversion in line may fit too
+        notifyAll();
+        return new Permit(bytes);
+    }
+
+    private synchronized void release(Permit permit) {
+        if (permit.released) {
+            return;
+        }
+        permit.released = true;
+        usedBytes -= permit.bytes;
+        notifyAll();
+    }
+}
@@ -0,0 +1,76 @@
+package io.peripage.helper;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable byte arrays of a fixed size, used to pad rows and to stage
+ * off-heap data before writing it to the printer, so the steady-state print
+ * path does not allocate.
+ */
+public class RowBufferPool {
+
+    private static final int DEFAULT_MAX_POOLED = 8;
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public RowBufferPool(int bufferSize) {
+        this(bufferSize, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param bufferSize size of every buffer of the pool
+     * @param maxPooled max number of idle buffers kept by the pool, extra released buffers are dropped
+     */
+    public RowBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one if the pool is empty.
+     * The content of the returned buffer is undefined.
+     * @return a buffer of {@link #getBufferSize()} bytes
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Take a zero filled buffer from the pool.
+     * @return a buffer of {@link #getBufferSize()} bytes filled with zeros
+     */
+    public byte[] acquireZeroed() {
+        byte[] buffer = acquire();
+        Arrays.fill(buffer, (byte) 0);
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. The buffer must not be used anymore by the caller.
+     * @param buffer a buffer previously acquired from this pool
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            throw new IllegalArgumentException("Buffer of " + buffer.length + " bytes does not belong to a pool of " + bufferSize + " bytes buffers");
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
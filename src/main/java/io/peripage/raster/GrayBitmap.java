@@ -0,0 +1,75 @@
+package io.peripage.raster;
+
+import java.util.Arrays;
+
+/**
+ * An 8-bit grayscale bitmap, one byte per pixel, 0 is black and 255 is white.
+ */
+public class GrayBitmap {
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    /**
+     * Create a white bitmap.
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public GrayBitmap(int width, int height) {
+        this(width, height, new byte[checkedSize(width, height)]);
+        Arrays.fill(pixels, (byte) 0xff);
+    }
+
+    /**
+     * Wrap existing pixels without copying them.
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param pixels gray levels, row after row
+     */
+    public GrayBitmap(int width, int height, byte[] pixels) {
+        if (width < 0 || height < 0 || pixels.length < (long) width * height) {
+            throw new IllegalArgumentException("Invalid bitmap geometry " + width + "x" + height + ", " + pixels.length + " bytes");
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * @return gray level of the pixel, from 0 (black) to 255 (white)
+     */
+    public int get(int x, int y) {
+        return pixels[y * width + x] & 0xff;
+    }
+
+    public void set(int x, int y, int gray) {
+        pixels[y * width + x] = (byte) Math.max(0, Math.min(255, gray));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gray levels, row after row. The array is not copied.
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the bytes of a bitmap, without wrapping around for huge dimensions
+     */
+    private static int checkedSize(int rowBytes, int height) {
+        long size = (long) rowBytes * height;
+        if (rowBytes < 0 || height < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid bitmap geometry " + rowBytes + " bytes x " + height + " rows");
+        }
+        return (int) size;
+    }
+}
@@ -0,0 +1,42 @@
+package io.peripage.raster;
+
+import java.io.IOException;
+
+/**
+ * An element placed by the {@link LabelPacker}: an image, a QR code, a text block...
+ * rasterized on demand, possibly in parallel with the other items.
+ */
+@FunctionalInterface
+public interface LabelItem {
+
+    /**
+     * Rasterize the item.
+     * @param maxWidth the width available on a row, wider bitmaps are clipped
+     * @return the 1-bit bitmap of the item
+     * @throws IOException If the item could not be rasterized
+     */
+    PackedBitmap rasterize(int maxWidth) throws IOException;
+
+    /**
+     * An item made of an already rasterized bitmap.
+     */
+    static LabelItem of(PackedBitmap bitmap) {
+        return maxWidth -> bitmap;
+    }
+
+    /**
+     * A grayscale bitmap, dithered and downsized to the available width if needed.
+     */
+    static LabelItem of(GrayBitmap gray) {
+        return maxWidth -> RasterHelper.convertToBlackAndWhite(gray, maxWidth);
+    }
+
+    /**
+     * A QR code.
+     * @param text The text to encode
+     * @param size The size of the qrcode
+     */
+    static LabelItem qr(String text, int size) {
+        return maxWidth -> RasterHelper.qrCode(text, Math.min(size, maxWidth));
+    }
+}
@@ -0,0 +1,128 @@
+package io.peripage.raster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Packs several small items side by side across the full printer row, instead of printing
+ * them one below the other centered on the paper.
+ *
+ * Items are rasterized in parallel, then placed with a shelf algorithm: sorted by decreasing
+ * height, each item goes on the first shelf with enough room left, or opens a new shelf below.
+ * The tallest item of a shelf sets its height.
+ */
+public class LabelPacker {
+
+    private final int rowWidth;
+    private final int gap;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param rowWidth The width of printer row
+     * @param gap blank pixels between two items, horizontally and vertically
+     */
+    public LabelPacker(int rowWidth, int gap) {
+        this(rowWidth, gap, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param rowWidth The width of printer row
+     * @param gap blank pixels between two items, horizontally and vertically
+     * @param pool the pool rasterizing the items
+     */
+    public LabelPacker(int rowWidth, int gap, ForkJoinPool pool) {
+        this.rowWidth = rowWidth;
+        this.gap = gap;
+        this.pool = pool;
+    }
+
+    /**
+     * Rasterize and pack items.
+     * @param items the items to pack
+     * @return a bitmap of the printer row width holding every item
+     * @throws IOException If an item could not be rasterized
+     */
+    public PackedBitmap pack(List<LabelItem> items) throws IOException {
+        List<Callable<PackedBitmap>> rasterizations = new ArrayList<>();
+        for (LabelItem item : items) {
+            rasterizations.add(() -> item.rasterize(rowWidth));
+        }
+
+        List<PackedBitmap> bitmaps = new ArrayList<>();
+        for (Future<PackedBitmap> future : pool.invokeAll(rasterizations)) {
+            try {
+                bitmaps.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                while (!(cause instanceof IOException) && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException("Could not rasterize label item", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rasterizing label items", e);
+            }
+        }
+        return packBitmaps(bitmaps);
+    }
+
+    /**
+     * Pack already rasterized bitmaps.
+     * @param bitmaps the bitmaps to pack
+     * @return a bitmap of the printer row width holding every bitmap
+     */
+    public PackedBitmap packBitmaps(List<PackedBitmap> bitmaps) {
+        List<PackedBitmap> sorted = new ArrayList<>(bitmaps);
+        sorted.sort(Comparator.comparingInt(PackedBitmap::getHeight).reversed());
+
+        List<Shelf> shelves = new ArrayList<>();
+        List<int[]> positions = new ArrayList<>();
+        int height = 0;
+        for (PackedBitmap bitmap : sorted) {
+            int width = Math.min(bitmap.getWidth(), rowWidth);
+            Shelf target = null;
+            for (Shelf shelf : shelves) {
+                if (shelf.usedWidth + gap + width <= rowWidth) {
+                    target = shelf;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Shelf(shelves.isEmpty() ? 0 : height + gap, bitmap.getHeight());
+                shelves.add(target);
+                height = target.y + target.height;
+                positions.add(new int[]{0, target.y});
+                target.usedWidth = width;
+            } else {
+                positions.add(new int[]{target.usedWidth + gap, target.y});
+                target.usedWidth += gap + width;
+            }
+        }
+
+        PackedBitmap packed = new PackedBitmap(rowWidth, height);
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.get(i).copyTo(packed, positions.get(i)[0], positions.get(i)[1]);
+        }
+        return packed;
+    }
+
+    private static class Shelf {
+        final int y;
+        final int height;
+        int usedWidth;
+
+        Shelf(int y, int height) {
+            this.y = y;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.peripage.raster;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader for Netpbm images: PBM (`P1` plain and `P4` raw) and PGM (`P2` plain and `P5` raw).
+ *
+ * Images come from uploads and dropped files, so the header values are bounded before anything is allocated:
+ * a few bytes of header must not be able to claim gigabytes of pixels.
+ */
+public class NetpbmReader {
+
+    /**
+     * Largest header value, well above any sample (`0xffff`) or sensible dimension.
+     */
+    private static final int MAX_VALUE = 1 << 20;
+    /**
+     * Largest image, 64 megapixels, so a decoded gray image stays under 64 MiB.
+     */
+    private static final long MAX_PIXELS = 1L << 26;
+
+    /**
+     * Read a PBM image. Raw PBM rows already match the printer format and are read as is.
+     * @param in the image stream
+     * @return the bitmap, 1 bits are black
+     * @throws IOException If the stream is not a valid PBM image
+     */
+    public static PackedBitmap readBitmap(InputStream in) throws IOException {
+        Header header = readHeader(new BufferedInputStream(in));
+        if (header.format != '1' && header.format != '4') {
+            throw new IOException("Not a PBM image: P" + (char) header.format);
+        }
+        PackedBitmap bitmap = new PackedBitmap(header.width, header.height);
+        if (header.format == '4') {
+            readFully(header.in, bitmap.getData());
+        } else {
+            for (int y = 0; y < header.height; y++) {
+                for (int x = 0; x < header.width; x++) {
+                    bitmap.set(x, y, readPlainBit(header.in) == 1);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Read a PGM or PBM image as grayscale. Levels are normalized to 0-255.
+     * @param in the image stream
+     * @return the grayscale bitmap
+     * @throws IOException If the stream is not a valid PGM or PBM image
+     */
+    public static GrayBitmap readGray(InputStream in) throws IOException {
+        Header header = readHeader(new BufferedInputStream(in));
+        int width = header.width;
+        int height = header.height;
+        GrayBitmap gray = new GrayBitmap(width, height);
+
+        switch (header.format) {
+            case '1', '4' -> {
+                PackedBitmap bitmap = new PackedBitmap(width, height);
+                if (header.format == '4') {
+                    readFully(header.in, bitmap.getData());
+                }
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        boolean black = header.format == '4' ? bitmap.get(x, y) : readPlainBit(header.in) == 1;
+                        gray.set(x, y, black ? 0 : 255);
+                    }
+                }
+            }
+            case '2' -> {
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        gray.set(x, y, readInt(header.in) * 255 / header.maxValue);
+                    }
+                }
+            }
+            case '5' -> {
+                int sampleBytes = header.maxValue > 255 ? 2 : 1;
+                byte[] samples = new byte[width * sampleBytes];
+                byte[] pixels = gray.getPixels();
+                for (int y = 0; y < height; y++) {
+                    readFully(header.in, samples);
+                    for (int x = 0; x < width; x++) {
+                        int sample = sampleBytes == 2
+                                ? ((samples[2 * x] & 0xff) << 8) | (samples[2 * x + 1] & 0xff)
+                                : samples[x] & 0xff;
+                        pixels[y * width + x] = (byte) (sample * 255 / header.maxValue);
+                    }
+                }
+            }
+            default -> throw new IOException("Unsupported Netpbm format: P" + (char) header.format);
+        }
+        return gray;
+    }
+
+    private static Header readHeader(InputStream in) throws IOException {
+        if (in.read() != 'P') {
+            throw new IOException("Not a Netpbm image");
+        }
+        Header header = new Header();
+        header.in = in;
+        header.format = in.read();
+        header.width = readInt(in);
+        header.height = readInt(in);
+        header.maxValue = header.format == '1' || header.format == '4' ? 1 : readInt(in);
+        if (header.width <= 0 || header.height <= 0 || header.maxValue <= 0 || header.maxValue > 0xffff) {
+            throw new IOException("Invalid Netpbm header");
+        }
+        if (Math.multiplyExact((long) header.width, header.height) > MAX_PIXELS) {
+            throw new IOException("Netpbm image too large: " + header.width + "x" + header.height);
+        }
+        // Raw formats: a single whitespace follows the header, it was consumed by readInt
+        return header;
+    }
+
+    /**
+     * Read an ASCII decimal value, up to {@link #MAX_VALUE}, skipping whitespaces and comments, and consume
+     * the single whitespace following it.
+     */
+    private static int readInt(InputStream in) throws IOException {
+        int c = skipWhitespacesAndComments(in);
+        // Checked on the first digit, a last sample of 0 may be directly followed by the end of file
+        if (c == -1) {
+            throw new EOFException("Truncated Netpbm image");
+        }
+        if (c < '0' || c > '9') {
+            throw new IOException("Invalid Netpbm value");
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > MAX_VALUE) {
+                throw new IOException("Netpbm value too large");
+            }
+            c = in.read();
+        }
+        return value;
+    }
+
+    private static int readPlainBit(InputStream in) throws IOException {
+        int c = skipWhitespacesAndComments(in);
+        if (c != '0' && c != '1') {
+            throw new IOException("Invalid PBM pixel");
+        }
+        return c - '0';
+    }
+
+    private static int skipWhitespacesAndComments(InputStream in) throws IOException {
+        int c = in.read();
+        while (c == '#' || Character.isWhitespace(c)) {
+            if (c == '#') {
+                while (c != '\n' && c != '\r' && c != -1) {
+                    c = in.read();
+                }
+            }
+            c = in.read();
+        }
+        if (c == -1) {
+            throw new EOFException("Truncated Netpbm image");
+        }
+        return c;
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        if (in.readNBytes(data, 0, data.length) != data.length) {
+            throw new EOFException("Truncated Netpbm image");
+        }
+    }
+
+    private static class Header {
+        InputStream in;
+        int format;
+        int width;
+        int height;
+        int maxValue;
+    }
+}
@@ -0,0 +1,94 @@
+package io.peripage.raster;
+
+import io.peripage.helper.ByteHelper;
+
+/**
+ * A 1-bit bitmap packed 8 pixels per byte, most significant bit first, which is the
+ * wire format of the printer rows. A bit set to 1 is a black (printed) dot.
+ */
+public class PackedBitmap {
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final byte[] data;
+
+    /**
+     * Create a blank bitmap with rows aligned on bytes.
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public PackedBitmap(int width, int height) {
+        this(width, height, (width + 7) / 8, new byte[checkedSize((width + 7) / 8, height)]);
+    }
+
+    /**
+     * Wrap existing packed data without copying it.
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param stride bytes per row, at least `ceil(width / 8)`
+     * @param data packed rows
+     */
+    public PackedBitmap(int width, int height, int stride, byte[] data) {
+        if (width < 0 || height < 0 || stride * 8 < width || data.length < (long) stride * height) {
+            throw new IllegalArgumentException("Invalid bitmap geometry " + width + "x" + height + ", stride " + stride + ", " + data.length + " bytes");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.data = data;
+    }
+
+    public boolean get(int x, int y) {
+        return ((data[y * stride + (x >> 3)] >> (7 - (x & 7))) & 1) != 0;
+    }
+
+    public void set(int x, int y, boolean black) {
+        int index = y * stride + (x >> 3);
+        int mask = 0x80 >> (x & 7);
+        data[index] = (byte) (black ? data[index] | mask : data[index] & ~mask);
+    }
+
+    /**
+     * Copy this bitmap at the given position of another one, clipping what falls outside.
+     * @param target the destination bitmap
+     * @param x left position in the destination
+     * @param y top position in the destination
+     */
+    public void copyTo(PackedBitmap target, int x, int y) {
+        ByteHelper.copyBits(data, stride, width, height, target.data, target.stride, x, y);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Bytes per row.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Packed rows, `getStride()` bytes each. The array is not copied.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the bytes of a bitmap, without wrapping around for huge dimensions
+     */
+    private static int checkedSize(int rowBytes, int height) {
+        long size = (long) rowBytes * height;
+        if (rowBytes < 0 || height < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid bitmap geometry " + rowBytes + " bytes x " + height + " rows");
+        }
+        return (int) size;
+    }
+}
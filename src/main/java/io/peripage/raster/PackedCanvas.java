@@ -0,0 +1,352 @@
+package io.peripage.raster;
+
+import io.peripage.domain.PrinterType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A 1-bit drawing surface to compose a page from several elements without going through AWT. Rows are
+ * packed in `long` words, 64 pixels per word with the leftmost pixel in the most significant bit, so a row
+ * written big-endian is the wire format of the printer rows. Every operation works a word at a time and
+ * is clipped to the canvas and to the clip rectangle; bits beyond the width always stay 0.
+ *
+ * Usage: `PackedCanvas canvas = PackedCanvas.forPrinter(PrinterType.A6p, 400)`, draw, then
+ * `printer.printCanvas(canvas)`.
+ */
+public class PackedCanvas {
+
+    /**
+     * How source bits are combined with the canvas bits, 1 being black.
+     */
+    public enum Op {
+        /**
+         * Replace the canvas bits.
+         */
+        COPY,
+        /**
+         * Add the black source pixels.
+         */
+        OR,
+        /**
+         * Keep only the pixels black in both, the source being a mask.
+         */
+        AND,
+        /**
+         * Invert the canvas pixels under the black source pixels.
+         */
+        XOR
+    }
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    private int clipLeft;
+    private int clipTop;
+    private int clipRight;
+    private int clipBottom;
+
+    /**
+     * Create a blank canvas.
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public PackedCanvas(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Invalid canvas size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+        resetClip();
+    }
+
+    /**
+     * Create a blank canvas as wide as the rows of a printer.
+     * @param printerType the printer
+     * @param height height in pixels
+     * @return the canvas
+     */
+    public static PackedCanvas forPrinter(PrinterType printerType, int height) {
+        return new PackedCanvas(printerType.getRowWidth(), height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Words per row.
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Packed rows, `getWordsPerRow()` words each. The array is not copied.
+     */
+    public long[] getWords() {
+        return words;
+    }
+
+    public boolean get(int x, int y) {
+        return (words[y * wordsPerRow + (x >>> 6)] << (x & 63)) < 0;
+    }
+
+    /**
+     * Set a pixel, unless it is outside the clip rectangle.
+     * @param x column
+     * @param y row
+     * @param black true for a black pixel
+     */
+    public void set(int x, int y, boolean black) {
+        if (x < clipLeft || x >= clipRight || y < clipTop || y >= clipBottom) {
+            return;
+        }
+        long bit = Long.MIN_VALUE >>> (x & 63);
+        int index = y * wordsPerRow + (x >>> 6);
+        words[index] = black ? words[index] | bit : words[index] & ~bit;
+    }
+
+    /**
+     * Restrict the following operations to a rectangle, intersected with the canvas.
+     * @param x left
+     * @param y top
+     * @param clipWidth width
+     * @param clipHeight height
+     */
+    public void setClip(int x, int y, int clipWidth, int clipHeight) {
+        clipLeft = Math.max(0, x);
+        clipTop = Math.max(0, y);
+        clipRight = Math.max(clipLeft, Math.min(width, x + clipWidth));
+        clipBottom = Math.max(clipTop, Math.min(height, y + clipHeight));
+    }
+
+    /**
+     * Let the following operations draw on the whole canvas.
+     */
+    public void resetClip() {
+        clipLeft = 0;
+        clipTop = 0;
+        clipRight = width;
+        clipBottom = height;
+    }
+
+    /**
+     * Paint a rectangle black.
+     */
+    public void fillRect(int x, int y, int rectWidth, int rectHeight) {
+        applyRect(x, y, rectWidth, rectHeight, -1L, Op.OR);
+    }
+
+    /**
+     * Invert the pixels of a rectangle.
+     */
+    public void invertRect(int x, int y, int rectWidth, int rectHeight) {
+        applyRect(x, y, rectWidth, rectHeight, -1L, Op.XOR);
+    }
+
+    /**
+     * Paint a rectangle white.
+     */
+    public void clearRect(int x, int y, int rectWidth, int rectHeight) {
+        applyRect(x, y, rectWidth, rectHeight, 0L, Op.COPY);
+    }
+
+    /**
+     * Draw a black horizontal line.
+     * @param x left
+     * @param y top
+     * @param length length in pixels
+     * @param thickness thickness in pixels
+     */
+    public void horizontalLine(int x, int y, int length, int thickness) {
+        fillRect(x, y, length, thickness);
+    }
+
+    /**
+     * Draw a black vertical line.
+     * @param x left
+     * @param y top
+     * @param length length in pixels
+     * @param thickness thickness in pixels
+     */
+    public void verticalLine(int x, int y, int length, int thickness) {
+        fillRect(x, y, thickness, length);
+    }
+
+    /**
+     * Combine a whole canvas with this one.
+     * @param source the canvas to draw, possibly this one
+     * @param x left position in this canvas
+     * @param y top position in this canvas
+     * @param op how the pixels are combined
+     */
+    public void blit(PackedCanvas source, int x, int y, Op op) {
+        blit(source, 0, 0, source.width, source.height, x, y, op);
+    }
+
+    /**
+     * Combine a rectangle of a canvas with this one, 64 pixels at a time whatever the alignment.
+     * @param source the canvas to draw from, possibly this one, even overlapping
+     * @param sourceX left of the rectangle in the source
+     * @param sourceY top of the rectangle in the source
+     * @param rectWidth width of the rectangle
+     * @param rectHeight height of the rectangle
+     * @param x left position in this canvas
+     * @param y top position in this canvas
+     * @param op how the pixels are combined
+     */
+    public void blit(PackedCanvas source, int sourceX, int sourceY, int rectWidth, int rectHeight, int x, int y,
+                     Op op) {
+        // Clip the rectangle to the source, then to the clip rectangle of this canvas
+        int left = Math.max(x, Math.max(clipLeft, x - sourceX));
+        int right = Math.min(x + rectWidth, Math.min(clipRight, x - sourceX + source.width));
+        int top = Math.max(y, Math.max(clipTop, y - sourceY));
+        int bottom = Math.min(y + rectHeight, Math.min(clipBottom, y - sourceY + source.height));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        long[] sourceRow = new long[source.wordsPerRow];
+        boolean upwards = source == this && sourceY < y;
+        for (int i = 0; i < bottom - top; i++) {
+            int row = upwards ? bottom - 1 - i : top + i;
+            // Rows are copied first, so overlapping blits read the source before it is drawn over
+            System.arraycopy(source.words, (row - y + sourceY) * source.wordsPerRow, sourceRow, 0, source.wordsPerRow);
+            blitRow(sourceRow, left - x + sourceX, row, left, right, op);
+        }
+    }
+
+    /**
+     * Combine a byte packed bitmap with this canvas.
+     * @param source the bitmap to draw
+     * @param x left position in this canvas
+     * @param y top position in this canvas
+     * @param op how the pixels are combined
+     */
+    public void blit(PackedBitmap source, int x, int y, Op op) {
+        int left = Math.max(x, clipLeft);
+        int right = Math.min(x + source.getWidth(), clipRight);
+        int top = Math.max(y, clipTop);
+        int bottom = Math.min(y + source.getHeight(), clipBottom);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        int sourceWords = (source.getWidth() + 63) >>> 6;
+        ByteBuffer rowBytes = ByteBuffer.allocate(sourceWords * Long.BYTES);
+        long[] sourceRow = new long[sourceWords];
+        for (int row = top; row < bottom; row++) {
+            rowBytes.clear();
+            rowBytes.put(source.getData(), (row - y) * source.getStride(), (source.getWidth() + 7) / 8);
+            rowBytes.rewind();
+            rowBytes.asLongBuffer().get(sourceRow);
+            blitRow(sourceRow, left - x, row, left, right, op);
+        }
+    }
+
+    /**
+     * Copy a row as bytes, the wire format of the printer rows.
+     * @param y the row
+     * @param target array receiving `ceil(getWidth() / 8)` bytes, or less if it is shorter
+     */
+    public void copyRowBytes(int y, byte[] target) {
+        int length = Math.min(target.length, (width + 7) / 8);
+        int rowStart = y * wordsPerRow;
+        for (int i = 0; i < length; i++) {
+            target[i] = (byte) (words[rowStart + (i >>> 3)] >>> (56 - 8 * (i & 7)));
+        }
+    }
+
+    /**
+     * Copy the canvas into a byte packed bitmap.
+     */
+    public PackedBitmap toPackedBitmap() {
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+        byte[] row = new byte[bitmap.getStride()];
+        for (int y = 0; y < height; y++) {
+            copyRowBytes(y, row);
+            System.arraycopy(row, 0, bitmap.getData(), y * bitmap.getStride(), row.length);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Clear the whole canvas, whatever the clip rectangle.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Combine the source row bits starting at `sourceBit` with the pixels `[left, right)` of a row.
+     */
+    private void blitRow(long[] sourceRow, int sourceBit, int row, int left, int right, Op op) {
+        int rowStart = row * wordsPerRow;
+        for (int word = left >>> 6; word <= (right - 1) >>> 6; word++) {
+            long bits = fetch64(sourceRow, sourceBit + (word << 6) - left);
+            apply(rowStart + word, bits, mask(word, left, right), op);
+        }
+    }
+
+    /**
+     * Combine a constant word with the pixels of a rectangle, clipped.
+     */
+    private void applyRect(int x, int y, int rectWidth, int rectHeight, long bits, Op op) {
+        int left = Math.max(x, clipLeft);
+        int right = Math.min(x + rectWidth, clipRight);
+        int top = Math.max(y, clipTop);
+        int bottom = Math.min(y + rectHeight, clipBottom);
+        if (left >= right) {
+            return;
+        }
+        for (int row = top; row < bottom; row++) {
+            int rowStart = row * wordsPerRow;
+            for (int word = left >>> 6; word <= (right - 1) >>> 6; word++) {
+                apply(rowStart + word, bits, mask(word, left, right), op);
+            }
+        }
+    }
+
+    private void apply(int index, long bits, long mask, Op op) {
+        long current = words[index];
+        words[index] = switch (op) {
+            case COPY -> (current & ~mask) | (bits & mask);
+            case OR -> current | (bits & mask);
+            case AND -> current & (bits | ~mask);
+            case XOR -> current ^ (bits & mask);
+        };
+    }
+
+    /**
+     * Bits of a word covered by the pixels `[left, right)`.
+     */
+    private static long mask(int word, int left, int right) {
+        int start = Math.max(left - (word << 6), 0);
+        int end = Math.min(right - (word << 6), 64);
+        long fromStart = -1L >>> start;
+        return end == 64 ? fromStart : fromStart & ~(-1L >>> end);
+    }
+
+    /**
+     * The 64 bits of a row starting at a bit, bits outside the row being 0.
+     */
+    private static long fetch64(long[] row, int bit) {
+        int index = Math.floorDiv(bit, 64);
+        int shift = Math.floorMod(bit, 64);
+        long high = index >= 0 && index < row.length ? row[index] : 0L;
+        if (shift == 0) {
+            return high;
+        }
+        long low = index + 1 >= 0 && index + 1 < row.length ? row[index + 1] : 0L;
+        return (high << shift) | (low >>> (64 - shift));
+    }
+}
@@ -0,0 +1,475 @@
+package io.peripage.raster;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import io.peripage.domain.PrintQuality;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Conversion routines working on {@link GrayBitmap} and {@link PackedBitmap}.
+ * Nothing in this package depends on AWT, so they can be used on headless servers
+ * without loading the Java2D stack.
+ */
+public class RasterHelper {
+
+    /**
+     * Max share of mid-gray pixels (anti-aliased edges, scanning noise) for an image to be
+     * considered bilevel.
+     */
+    public static final double BILEVEL_TOLERANCE = 0.02;
+
+    private static final int BILEVEL_DARK = 48;
+    private static final int BILEVEL_LIGHT = 208;
+
+    /**
+     * Gray levels below which a pixel is black, from the 8x8 Bayer index matrix.
+     */
+    private static final int[][] BAYER_THRESHOLDS = new int[8][8];
+
+    /**
+     * Each byte with its bits in reverse order.
+     */
+    private static final int[] REVERSED_BITS = new int[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            REVERSED_BITS[b] = Integer.reverse(b) >>> 24;
+        }
+
+        int[][] bayer = {
+                {0, 32, 8, 40, 2, 34, 10, 42},
+                {48, 16, 56, 24, 50, 18, 58, 26},
+                {12, 44, 4, 36, 14, 46, 6, 38},
+                {60, 28, 52, 20, 62, 30, 54, 22},
+                {3, 35, 11, 43, 1, 33, 9, 41},
+                {51, 19, 59, 27, 49, 17, 57, 25},
+                {15, 47, 7, 39, 13, 45, 5, 37},
+                {63, 31, 55, 23, 61, 29, 53, 21}
+        };
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                BAYER_THRESHOLDS[y][x] = (bayer[y][x] * 2 + 1) * 256 / 128;
+            }
+        }
+    }
+
+    /**
+     * Resize a bitmap to a new width and keep the aspect ratio.
+     * Downscaling averages the source pixels covered by each target pixel, upscaling
+     * uses the nearest source pixel.
+     * @param gray The bitmap to resize
+     * @param newWidth The new width
+     * @return The resized bitmap
+     */
+    public static GrayBitmap resize(GrayBitmap gray, int newWidth) {
+        return resize(gray, newWidth, (int) ((double) newWidth / gray.getWidth() * gray.getHeight()));
+    }
+
+    /**
+     * Resize a grayscale bitmap to a new size, averaging the source pixels covered by each target pixel.
+     * @param gray The bitmap to resize
+     * @param newWidth The new width
+     * @param newHeight The new height
+     * @return The resized bitmap
+     */
+    public static GrayBitmap resize(GrayBitmap gray, int newWidth, int newHeight) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        if (newWidth == width && newHeight == height) {
+            return gray;
+        }
+
+        GrayBitmap resized = new GrayBitmap(newWidth, newHeight);
+        for (int y = 0; y < newHeight; y++) {
+            int y0 = (int) ((long) y * height / newHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (y + 1) * height / newHeight));
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = (int) ((long) x * width / newWidth);
+                int x1 = Math.max(x0 + 1, (int) ((long) (x + 1) * width / newWidth));
+                int sum = 0;
+                for (int sy = y0; sy < y1; sy++) {
+                    for (int sx = x0; sx < x1; sx++) {
+                        sum += gray.get(sx, sy);
+                    }
+                }
+                resized.set(x, y, sum / ((y1 - y0) * (x1 - x0)));
+            }
+        }
+        return resized;
+    }
+
+    /**
+     * Convert a grayscale bitmap to 1-bit using Floyd-Steinberg error diffusion.
+     * @param gray The bitmap to convert
+     * @return The 1-bit bitmap, 1 bits are black
+     */
+    public static PackedBitmap dither(GrayBitmap gray) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+
+        // Errors diffused to the current and the next row, with one extra cell on each side
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int old = gray.get(x, y) + current[x + 1] / 16;
+                int nem = old < 128 ? 0 : 255;
+                if (nem == 0) {
+                    bitmap.set(x, y, true);
+                }
+
+                int error = old - nem;
+                current[x + 2] += error * 7;
+                next[x] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 2] += error;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Convert a grayscale bitmap to a 1-bit bitmap fitting the printer row.
+     * @param gray The bitmap to convert
+     * @param rowWidth The width of printer row
+     * @return The converted bitmap
+     */
+    public static PackedBitmap convertToBlackAndWhite(GrayBitmap gray, int rowWidth) {
+        return convertToBlackAndWhite(gray, rowWidth, PrintQuality.HIGH);
+    }
+
+    /**
+     * Convert a grayscale bitmap to a 1-bit bitmap fitting the printer row, for a quality tier.
+     * {@link PrintQuality#DRAFT} bitmaps have half the rows, each to be printed twice.
+     * @param gray The bitmap to convert
+     * @param rowWidth The width of printer row
+     * @param quality The quality tier
+     * @return The converted bitmap
+     */
+    public static PackedBitmap convertToBlackAndWhite(GrayBitmap gray, int rowWidth, PrintQuality quality) {
+        int newWidth = Math.min(gray.getWidth(), rowWidth);
+        int newHeight = (int) ((double) newWidth / gray.getWidth() * gray.getHeight());
+        newHeight = Math.max(1, newHeight / quality.getRowReduction());
+        PackedBitmap bilevel = toBilevel(gray);
+        if (bilevel != null) {
+            return scaleNearest(bilevel, newWidth, newHeight);
+        }
+        GrayBitmap resized = resize(gray, newWidth, newHeight);
+        return switch (quality) {
+            case HIGH -> dither(resized);
+            case STANDARD -> orderedDither(resized);
+            case DRAFT -> threshold(resized);
+        };
+    }
+
+    /**
+     * Convert a grayscale bitmap to 1-bit by comparing each pixel with an 8x8 Bayer matrix.
+     * Cheaper than error diffusion, with a regular cross-hatch pattern.
+     * @param gray The bitmap to convert
+     * @return The 1-bit bitmap, 1 bits are black
+     */
+    public static PackedBitmap orderedDither(GrayBitmap gray) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+        for (int y = 0; y < height; y++) {
+            int[] thresholds = BAYER_THRESHOLDS[y & 7];
+            for (int x = 0; x < width; x++) {
+                if (gray.get(x, y) < thresholds[x & 7]) {
+                    bitmap.set(x, y, true);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Convert a grayscale bitmap to 1-bit with a fixed mid-gray threshold.
+     * @param gray The bitmap to convert
+     * @return The 1-bit bitmap, 1 bits are black
+     */
+    public static PackedBitmap threshold(GrayBitmap gray) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (gray.get(x, y) < 128) {
+                    bitmap.set(x, y, true);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Whether a gray level is neither clearly black nor clearly white.
+     */
+    public static boolean isMidGray(int gray) {
+        return gray > BILEVEL_DARK && gray < BILEVEL_LIGHT;
+    }
+
+    /**
+     * Threshold a bitmap that is already (nearly) black and white, such as a logo, a barcode or
+     * a screenshot of text. The scan stops as soon as too many mid-gray pixels are found, so
+     * photos are rejected quickly.
+     * @param gray The bitmap to convert
+     * @return The 1-bit bitmap, or null if the bitmap is not bilevel
+     */
+    public static PackedBitmap toBilevel(GrayBitmap gray) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        long tolerance = (long) (BILEVEL_TOLERANCE * width * height);
+        long midGray = 0;
+        byte[] pixels = gray.getPixels();
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = pixels[y * width + x] & 0xff;
+                if (isMidGray(level) && ++midGray > tolerance) {
+                    return null;
+                }
+                if (level < 128) {
+                    bitmap.set(x, y, true);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Resize a 1-bit bitmap to a new width and keep the aspect ratio, using the nearest
+     * source pixel so edges stay sharp.
+     * @param bitmap The bitmap to resize
+     * @param newWidth The new width
+     * @return The resized bitmap
+     */
+    public static PackedBitmap scaleNearest(PackedBitmap bitmap, int newWidth) {
+        return scaleNearest(bitmap, newWidth, (int) ((double) newWidth / bitmap.getWidth() * bitmap.getHeight()));
+    }
+
+    /**
+     * Resize a 1-bit bitmap to a new size using the nearest source pixel.
+     * @param bitmap The bitmap to resize
+     * @param newWidth The new width
+     * @param newHeight The new height
+     * @return The resized bitmap
+     */
+    public static PackedBitmap scaleNearest(PackedBitmap bitmap, int newWidth, int newHeight) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (newWidth == width && newHeight == height) {
+            return bitmap;
+        }
+
+        int[] sourceColumns = new int[newWidth];
+        for (int x = 0; x < newWidth; x++) {
+            sourceColumns[x] = (int) ((long) x * width / newWidth);
+        }
+
+        PackedBitmap scaled = new PackedBitmap(newWidth, newHeight);
+        for (int y = 0; y < newHeight; y++) {
+            int sourceRow = (int) ((long) y * height / newHeight);
+            for (int x = 0; x < newWidth; x++) {
+                if (bitmap.get(sourceColumns[x], sourceRow)) {
+                    scaled.set(x, y, true);
+                }
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * Rotate a 1-bit bitmap, then optionally mirror it left to right.
+     * @param bitmap The bitmap to rotate
+     * @param rotation The clockwise rotation
+     * @param mirror true to mirror the rotated bitmap, for iron-on transfers for instance
+     * @return The rotated bitmap, with rows aligned on bytes
+     */
+    public static PackedBitmap rotate(PackedBitmap bitmap, Rotation rotation, boolean mirror) {
+        int width = rotation.rotatedWidth(bitmap);
+        int height = rotation.rotatedHeight(bitmap);
+        PackedBitmap rotated = new PackedBitmap(width, height);
+        rotateBand(bitmap, rotation, mirror, 0, height, rotated.getData(), rotated.getStride(), 0);
+        return rotated;
+    }
+
+    /**
+     * Rotate a 1-bit bitmap into a bitmap as wide as the printer rows, centered at a byte boundary.
+     * Rotated bitmaps wider than the rows are truncated.
+     * @param bitmap The bitmap to rotate
+     * @param rotation The clockwise rotation
+     * @param mirror true to mirror the rotated bitmap
+     * @param rowBytes The printer row bytes, see `PrinterType.getRowBytes()`
+     * @return The rotated bitmap, `rowBytes` bytes per row
+     */
+    public static PackedBitmap rotate(PackedBitmap bitmap, Rotation rotation, boolean mirror, int rowBytes) {
+        int height = rotation.rotatedHeight(bitmap);
+        PackedBitmap rotated = new PackedBitmap(rowBytes * 8, height);
+        rotateBand(bitmap, rotation, mirror, 0, height, rotated.getData(), rowBytes,
+                centeredByteOffset(rotation.rotatedWidth(bitmap), rowBytes));
+        return rotated;
+    }
+
+    /**
+     * Byte offset centering a bitmap in rows of `rowBytes` bytes, 0 if it is wider.
+     * @param width The bitmap width
+     * @param rowBytes The row bytes
+     * @return The offset of the first byte of the bitmap in each row
+     */
+    public static int centeredByteOffset(int width, int rowBytes) {
+        return Math.max(0, (rowBytes - (width + 7) / 8) / 2);
+    }
+
+    /**
+     * Rotate a band of rows of a 1-bit bitmap, so very long banners can be rotated and printed band by band
+     * without holding the whole rotated bitmap. Quarter turns transpose 8x8 bit blocks: 8 bytes of 8 source
+     * rows are gathered in a long, transposed with three mask-and-shift steps and scattered as 8 bytes of 8
+     * rotated rows. Half turns and mirrors reverse bytes with a lookup table.
+     * @param bitmap The bitmap to rotate
+     * @param rotation The clockwise rotation
+     * @param mirror true to mirror the rotated bitmap
+     * @param firstRow The first rotated row to produce
+     * @param rows The number of rotated rows to produce
+     * @param target The packed rows receiving the band, from index 0. Rows are cleared before being written
+     * @param stride The bytes per row of the target
+     * @param byteOffset The byte of each target row receiving the first rotated byte, bytes not fitting
+     *                   in the stride are dropped
+     */
+    public static void rotateBand(PackedBitmap bitmap, Rotation rotation, boolean mirror, int firstRow, int rows,
+                                  byte[] target, int stride, int byteOffset) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int rotatedBytes = Math.min((rotation.rotatedWidth(bitmap) + 7) / 8, stride - byteOffset);
+        int endRow = Math.min(firstRow + rows, rotation.rotatedHeight(bitmap));
+        Arrays.fill(target, 0, rows * stride, (byte) 0);
+
+        if (!rotation.isQuarterTurn()) {
+            boolean reverseRows = rotation == Rotation.CLOCKWISE_180;
+            boolean reverseBits = reverseRows != mirror;
+            for (int y = firstRow; y < endRow; y++) {
+                int sourceRow = reverseRows ? height - 1 - y : y;
+                int targetStart = (y - firstRow) * stride + byteOffset;
+                for (int bx = 0; bx < rotatedBytes; bx++) {
+                    target[targetStart + bx] = (byte) (reverseBits
+                            ? REVERSED_BITS[bitWindow(bitmap, sourceRow, width - 8 - 8 * bx)]
+                            : bitWindow(bitmap, sourceRow, 8 * bx));
+                }
+            }
+            return;
+        }
+
+        // Rotated pixel (x, y) is the source pixel of column y, or width - 1 - y, and of row x, or height - 1 - x
+        boolean reverseColumns = rotation == Rotation.CLOCKWISE_270;
+        boolean reverseRows = (rotation == Rotation.CLOCKWISE_90) != mirror;
+        for (int y0 = firstRow; y0 < endRow; y0 += 8) {
+            int sourceColumn = reverseColumns ? width - 8 - y0 : y0;
+            int bandRows = Math.min(8, endRow - y0);
+            for (int bx = 0; bx < rotatedBytes; bx++) {
+                long block = 0;
+                for (int k = 0; k < 8; k++) {
+                    int x = 8 * bx + k;
+                    if (x >= height) {
+                        break;
+                    }
+                    int bits = bitWindow(bitmap, reverseRows ? height - 1 - x : x, sourceColumn);
+                    block |= (long) (reverseColumns ? REVERSED_BITS[bits] : bits) << (56 - 8 * k);
+                }
+                if (block == 0) {
+                    continue;
+                }
+                block = transpose8x8(block);
+                int targetIndex = (y0 - firstRow) * stride + byteOffset + bx;
+                for (int j = 0; j < bandRows; j++) {
+                    target[targetIndex + j * stride] = (byte) (block >>> (56 - 8 * j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Transpose an 8x8 bit matrix, row i being byte i from the most significant one.
+     */
+    private static long transpose8x8(long x) {
+        long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+        x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+        x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+        return x ^ t ^ (t << 28);
+    }
+
+    /**
+     * The 8 pixels of a row starting at a column, most significant bit first, pixels outside the bitmap
+     * being white.
+     */
+    private static int bitWindow(PackedBitmap bitmap, int row, int column) {
+        int width = bitmap.getWidth();
+        byte[] data = bitmap.getData();
+        int rowStart = row * bitmap.getStride();
+        int shift = column & 7;
+        int index = column >> 3;
+        if (shift == 0 && column >= 0 && column + 8 <= width) {
+            return data[rowStart + index] & 0xff;
+        }
+        int high = index >= 0 && index < bitmap.getStride() ? data[rowStart + index] & 0xff : 0;
+        int low = index + 1 >= 0 && index + 1 < bitmap.getStride() ? data[rowStart + index + 1] & 0xff : 0;
+        int bits = ((high << 8 | low) << shift >>> 8) & 0xff;
+        if (column < 0) {
+            bits &= 0xff >>> Math.min(8, -column);
+        }
+        if (column + 8 > width) {
+            bits &= (0xff << Math.min(8, column + 8 - width)) & 0xff;
+        }
+        return bits;
+    }
+
+    /**
+     * Pad a bitmap to center it with white pixels to the desired width around it.
+     * @param bitmap The bitmap to pad
+     * @param desiredWidth The resulting bitmap desired width
+     * @return The padded bitmap
+     */
+    public static PackedBitmap centerPad(PackedBitmap bitmap, int desiredWidth) {
+        PackedBitmap padded = new PackedBitmap(desiredWidth, bitmap.getHeight());
+        bitmap.copyTo(padded, (desiredWidth - bitmap.getWidth()) / 2, 0);
+        return padded;
+    }
+
+    /**
+     * Generate a QR code directly as a 1-bit bitmap.
+     * @param text The text to encode
+     * @param size The size of the qrcode
+     * @return The QR code bitmap
+     * @throws IOException If the text could not be encoded
+     */
+    public static PackedBitmap qrCode(String text, int size) throws IOException {
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+        } catch (WriterException e) {
+            throw new IOException("Could not encode QR code", e);
+        }
+
+        PackedBitmap bitmap = new PackedBitmap(matrix.getWidth(), matrix.getHeight());
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y)) {
+                    bitmap.set(x, y, true);
+                }
+            }
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,38 @@
+package io.peripage.raster;
+
+/**
+ * Clockwise rotation of a bitmap, see {@link RasterHelper#rotate(PackedBitmap, Rotation, boolean)}.
+ */
+public enum Rotation {
+    NONE,
+    /**
+     * The top of the bitmap ends up on the right, so a wide banner runs along the paper.
+     */
+    CLOCKWISE_90,
+    CLOCKWISE_180,
+    /**
+     * The top of the bitmap ends up on the left.
+     */
+    CLOCKWISE_270;
+
+    /**
+     * True for the rotations swapping width and height.
+     */
+    public boolean isQuarterTurn() {
+        return this == CLOCKWISE_90 || this == CLOCKWISE_270;
+    }
+
+    /**
+     * Width of a bitmap once rotated.
+     */
+    public int rotatedWidth(PackedBitmap bitmap) {
+        return isQuarterTurn() ? bitmap.getHeight() : bitmap.getWidth();
+    }
+
+    /**
+     * Height of a bitmap once rotated.
+     */
+    public int rotatedHeight(PackedBitmap bitmap) {
+        return isQuarterTurn() ? bitmap.getWidth() : bitmap.getHeight();
+    }
+}
@@ -0,0 +1,145 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import io.peripage.helper.ByteHelper;
+import io.peripage.helper.ImageHelper;
+import io.peripage.raster.NetpbmReader;
+import io.peripage.raster.PackedBitmap;
+import io.peripage.raster.RasterHelper;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Converts images ahead of time into print-ready files ({@link PrintFile}), so printing them
+ * later with {@link PrinterService#printFile(PrintFile)} costs no conversion at all.
+ * Images of a directory are converted in parallel on a fork-join pool.
+ */
+public class BatchRenderer {
+
+    private static final List<String> NETPBM_EXTENSIONS = List.of(".pbm", ".pgm", ".pnm");
+
+    private final PrinterType printerType;
+    private final int chunkRows;
+    private final PrinterService.ResetMode resetMode;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a renderer producing the byte stream of the default raster mode, on the common pool.
+     * @param printerType target printer type
+     */
+    public BatchRenderer(PrinterType printerType) {
+        this(printerType, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param printerType target printer type
+     * @param largeRasterMode produce the byte stream of the large raster mode, see {@link PrinterService#setLargeRasterMode(boolean)}
+     * @param pool the pool converting the images
+     */
+    public BatchRenderer(PrinterType printerType, boolean largeRasterMode, ForkJoinPool pool) {
+        this.printerType = printerType;
+        this.chunkRows = largeRasterMode ? printerType.getLargeRasterChunkRows() : PrinterService.DEFAULT_CHUNK_ROWS;
+        this.resetMode = largeRasterMode ? PrinterService.ResetMode.ONCE : PrinterService.ResetMode.EACH_CHUNK;
+        this.pool = pool;
+    }
+
+    /**
+     * Convert every image of a directory into a print-ready file of the same name with the
+     * {@link PrintFile#EXTENSION} extension. Files that are not images are ignored.
+     * @param inputDir directory containing the images
+     * @param outputDir directory receiving the print-ready files, created if needed
+     * @return the print-ready files, in the order of the image names
+     * @throws IOException If an image could not be read or converted
+     * @throws InterruptedException If interrupted while waiting for the conversions
+     */
+    public List<Path> renderDirectory(Path inputDir, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+
+        List<Path> images;
+        try (Stream<Path> files = Files.list(inputDir)) {
+            images = files.filter(Files::isRegularFile).filter(BatchRenderer::isImage).sorted().toList();
+        }
+
+        List<Callable<Path>> conversions = new ArrayList<>();
+        for (Path image : images) {
+            conversions.add(() -> render(image, outputDir.resolve(baseName(image) + PrintFile.EXTENSION)));
+        }
+
+        List<Path> rendered = new ArrayList<>();
+        for (Future<Path> future : pool.invokeAll(conversions)) {
+            try {
+                rendered.add(future.get());
+            } catch (ExecutionException e) {
+                // Fork-join tasks may wrap the original exception several times
+                Throwable cause = e.getCause();
+                while (!(cause instanceof IOException) && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException("Could not convert image", e.getCause());
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Convert a single image into a print-ready file. Images are converted like
+     * {@link PrinterService#printPaddedImage(BufferedImage)} does, PBM/PGM images like
+     * {@link PrinterService#printGrayBitmap(io.peripage.raster.GrayBitmap)} does.
+     * @param image the image file
+     * @param output the print-ready file to write
+     * @return the print-ready file
+     * @throws IOException If the image could not be read or the file written
+     */
+    public Path render(Path image, Path output) throws IOException {
+        PrintFile.write(output, printerType, toRows(image), chunkRows, resetMode);
+        return output;
+    }
+
+    List<byte[]> toRows(Path image) throws IOException {
+        int rowWidth = printerType.getRowWidth();
+        try (InputStream in = Files.newInputStream(image)) {
+            if (NETPBM_EXTENSIONS.contains(extension(image))) {
+                PackedBitmap bitmap = RasterHelper.centerPad(RasterHelper.convertToBlackAndWhite(NetpbmReader.readGray(in), rowWidth), rowWidth);
+                List<byte[]> rows = new ArrayList<>();
+                for (int y = 0; y < bitmap.getHeight(); y++) {
+                    rows.add(ByteHelper.padRowBytes(printerType.getRowBytes(), Arrays.copyOfRange(bitmap.getData(), y * bitmap.getStride(), (y + 1) * bitmap.getStride())));
+                }
+                return rows;
+            }
+            return ImageHelper.readPaddedRows(in, rowWidth);
+        }
+    }
+
+    static boolean isImage(Path file) {
+        String extension = extension(file);
+        return NETPBM_EXTENSIONS.contains(extension) || Arrays.asList(ImageIO.getReaderFileSuffixes()).contains(extension.replace(".", ""));
+    }
+
+    static String extension(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
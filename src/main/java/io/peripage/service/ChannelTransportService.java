@@ -0,0 +1,225 @@
+package io.peripage.service;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Transport writing to the printer through NIO channels instead of BlueCove, either:
+ * <ul>
+ *     <li>a device or file path, typically an RFCOMM device bound with
+ *     `rfcomm bind /dev/rfcomm0 04:7F:0E:B0:CA:57 1`, a named pipe or a pseudo-terminal. Terminals are put
+ *     in raw mode with `stty`, otherwise every `0a` byte of a raster row would be sent as `0d0a` and the
+ *     responses of the printer echoed back to it</li>
+ *     <li>a TCP socket, for serial-over-network bridges or tests</li>
+ * </ul>
+ * Heap arrays are copied into a direct buffer before being written, the way the channel would do it
+ * anyway but without its per-call temporary buffer, and several buffers are sent with a single
+ * gathering write.
+ *
+ * Usage: `new PrinterService(PrinterType.A6p, new ChannelTransportService(Path.of("/dev/rfcomm0")))`.
+ */
+public class ChannelTransportService extends TransportService {
+
+    private static final int DIRECT_BUFFER_SIZE = 8192;
+
+    /**
+     * File type bits of the `unix:mode` attribute, and the type of character devices.
+     */
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFCHR = 0020000;
+
+    private final Path path;
+    private final InetSocketAddress address;
+    private final ByteBuffer direct = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+
+    private GatheringByteChannel channel;
+    private RandomAccessFile file;
+    private FileInputStream fileInput;
+
+    /**
+     * @param path the device, pipe or file the printer is bound to
+     */
+    public ChannelTransportService(Path path) {
+        this.path = path;
+        this.address = null;
+    }
+
+    /**
+     * @param address the address of a socket forwarding the bytes to the printer
+     */
+    public ChannelTransportService(InetSocketAddress address) {
+        this.path = null;
+        this.address = address;
+    }
+
+    /**
+     * Open the channel and reset the printer.
+     * @throws IOException If the path does not exist, the terminal could not be put in raw mode or the
+     * socket could not be opened
+     */
+    @Override
+    public void connect() throws IOException {
+        if (path != null) {
+            // Opening in read-write mode would create a mistyped path as a file, and print into it
+            if (!Files.exists(path)) {
+                throw new NoSuchFileException(path.toString(), null, "No such device or pipe");
+            }
+            // Read-write, so opening a named pipe does not block until the other end is opened
+            file = new RandomAccessFile(path.toFile(), "rw");
+            try {
+                if (isCharacterDevice(path)) {
+                    makeRaw(path);
+                }
+            } catch (IOException e) {
+                file.close();
+                file = null;
+                throw e;
+            }
+            fileInput = new FileInputStream(file.getFD());
+            channel = file.getChannel();
+        } else {
+            channel = SocketChannel.open(address);
+        }
+        reset();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    public void reconnect() throws IOException {
+        disconnect();
+        connect();
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (file != null) {
+            file.close();
+            file = null;
+            fileInput = null;
+        }
+    }
+
+    @Override
+    public synchronized void tellPrinter(byte[] byteseq, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int chunk = Math.min(direct.capacity(), end - offset);
+            direct.clear();
+            direct.put(byteseq, offset, chunk).flip();
+            writeFully(direct);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Send the remaining bytes of a buffer to the printer without response. Direct buffers are
+     * written without any copy.
+     * @param buffer bytes data
+     * @throws IOException
+     */
+    @Override
+    public synchronized void tellPrinter(ByteBuffer buffer) throws IOException {
+        if (buffer.isDirect()) {
+            writeFully(buffer);
+        } else {
+            super.tellPrinter(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void tellPrinterSeq(ByteBuffer... buffers) throws IOException {
+        ensureConnected();
+        long remaining = Arrays.stream(buffers).mapToLong(ByteBuffer::remaining).sum();
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Receive the bytes the printer already sent, without waiting for more.
+     * @return the received bytes, possibly none
+     * @throws IOException
+     */
+    @Override
+    public byte[] listenPrinter() throws IOException {
+        ensureConnected();
+        if (fileInput != null) {
+            return fileInput.readNBytes(fileInput.available());
+        }
+
+        SocketChannel socket = (SocketChannel) channel;
+        ByteBuffer response = ByteBuffer.allocate(256);
+        synchronized (this) {
+            socket.configureBlocking(false);
+            try {
+                while (socket.read(response) > 0) {
+                    if (!response.hasRemaining()) {
+                        response = ByteBuffer.allocate(response.capacity() * 2).put(response.flip());
+                    }
+                }
+            } finally {
+                socket.configureBlocking(true);
+            }
+        }
+        return Arrays.copyOf(response.array(), response.position());
+    }
+
+    private static boolean isCharacterDevice(Path path) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode");
+            return (mode & S_IFMT) == S_IFCHR;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // No unix attributes on this platform, and no terminal settings to fix
+            return false;
+        }
+    }
+
+    /**
+     * Disable the output processing, echo and line discipline of a terminal, so bytes go through unchanged.
+     */
+    private static void makeRaw(Path device) throws IOException {
+        Process stty = new ProcessBuilder("stty", "-F", device.toString(), "raw", "-echo")
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(stty.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        try {
+            if (stty.waitFor() != 0) {
+                throw new IOException("Could not put " + device + " in raw mode: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while putting " + device + " in raw mode", e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        ensureConnected();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void ensureConnected() throws IOException {
+        if (channel == null) {
+            throw new IOException("Transport is not connected");
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.peripage.service;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Incremental parser of the ESC/POS subset sent by point of sale software to raw port 9100 printers:
+ * `GS v 0` raster images, `ESC J` and `ESC d` feeds and plain ASCII text. Other common commands (styles,
+ * alignment, cuts, code pages...) are skipped with their parameters, and the commands carrying a payload
+ * (`ESC *` bit images, `GS (` functions such as QR codes, `GS 8 L` graphics and `GS k` barcodes) with
+ * their payload, so its bytes are never taken for text.
+ *
+ * Bytes can be pushed in slices of any size, events are reported as soon as they are complete. At most
+ * one raster row and one text line are buffered.
+ */
+public class EscPosParser {
+
+    /**
+     * Receives the parsed commands, in stream order.
+     */
+    public interface Listener {
+
+        /**
+         * A complete raster row, `xL + xH * 256` bytes, 1 bits are black.
+         * @param row the row, owned by the listener
+         * @param mode raster mode, bit 0 for double width, bit 1 for double height
+         */
+        void rasterRow(byte[] row, int mode) throws IOException, InterruptedException;
+
+        /**
+         * The last row of a raster image was received.
+         */
+        void rasterEnd() throws IOException, InterruptedException;
+
+        /**
+         * Feed paper, `ESC J n`.
+         * @param dots dot lines to feed
+         */
+        void feed(int dots) throws IOException, InterruptedException;
+
+        /**
+         * Feed paper, `ESC d n`.
+         * @param lines text lines to feed
+         */
+        void feedLines(int lines) throws IOException, InterruptedException;
+
+        /**
+         * A line of text, terminated by a line feed or a feed command.
+         * @param line the printable ASCII characters of the line
+         */
+        void text(String line) throws IOException, InterruptedException;
+    }
+
+    private static final int LF = 0x0a;
+    private static final int ESC = 0x1b;
+    private static final int GS = 0x1d;
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int RASTER_HEADER_LENGTH = 6;
+
+    /**
+     * Number of parameter bytes of the skipped commands.
+     */
+    private static final Map<Character, Integer> ESC_PARAMETERS = Map.ofEntries(
+            Map.entry('!', 1), Map.entry('-', 1), Map.entry('2', 0), Map.entry('3', 1), Map.entry('@', 0),
+            Map.entry('E', 1), Map.entry('G', 1), Map.entry('M', 1), Map.entry('R', 1), Map.entry('a', 1),
+            Map.entry('t', 1), Map.entry('{', 1), Map.entry('r', 1), Map.entry(' ', 1), Map.entry('$', 2),
+            Map.entry('c', 2), Map.entry('p', 3), Map.entry('i', 0), Map.entry('m', 0));
+    private static final Map<Character, Integer> GS_PARAMETERS = Map.ofEntries(
+            Map.entry('!', 1), Map.entry('B', 1), Map.entry('H', 1), Map.entry('L', 2), Map.entry('W', 2),
+            Map.entry('a', 1), Map.entry('f', 1), Map.entry('h', 1), Map.entry('r', 1), Map.entry('w', 1));
+
+    private enum State {
+        TEXT, ESC, GS, SKIP, SKIP_TO_NUL, PAYLOAD_HEADER, ESC_J, ESC_D, GS_V_CUT, RASTER_HEADER, RASTER_ROWS
+    }
+
+    /**
+     * Commands followed by a payload whose length is given by the bytes after the command.
+     */
+    private enum PayloadCommand {
+        /**
+         * `ESC * m nL nH d...`, `nL + nH * 256` columns of 1 byte, or 3 bytes for `m` 32 and 33.
+         */
+        BIT_IMAGE(3),
+        /**
+         * `GS ( fn pL pH d...`, `pL + pH * 256` bytes.
+         */
+        FUNCTION(3),
+        /**
+         * `GS 8 L p1 p2 p3 p4 d...`, `p1 + p2 * 256 + p3 * 65536 + p4 * 16777216` bytes.
+         */
+        GRAPHICS(5),
+        /**
+         * `GS k m d... NUL` for `m` up to 6, `GS k m n d...` with `n` bytes for the others.
+         */
+        BARCODE(1);
+
+        private final int headerLength;
+
+        PayloadCommand(int headerLength) {
+            this.headerLength = headerLength;
+        }
+    }
+
+    private final Listener listener;
+    private final StringBuilder line = new StringBuilder();
+    private final byte[] rasterHeader = new byte[RASTER_HEADER_LENGTH];
+    private final byte[] payloadHeader = new byte[PayloadCommand.GRAPHICS.headerLength];
+
+    private State state = State.TEXT;
+    private long skip;
+    private PayloadCommand payloadCommand;
+    private int payloadHeaderLength;
+    private int payloadHeaderExpected;
+    private int rasterHeaderLength;
+    private byte[] row;
+    private int rowLength;
+    private int rowsLeft;
+    private int rasterMode;
+
+    public EscPosParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parse the next bytes of the stream.
+     * @param data bytes received
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @throws IOException If the listener could not print
+     * @throws InterruptedException If the listener was interrupted
+     */
+    public void parse(byte[] data, int offset, int length) throws IOException, InterruptedException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (state == State.RASTER_ROWS) {
+                int count = Math.min(end - i, row.length - rowLength);
+                System.arraycopy(data, i, row, rowLength, count);
+                rowLength += count;
+                i += count;
+                if (rowLength == row.length) {
+                    endRow();
+                }
+                continue;
+            }
+            if (state == State.SKIP) {
+                int count = (int) Math.min(end - i, skip);
+                i += count;
+                skip -= count;
+                if (skip == 0) {
+                    state = State.TEXT;
+                }
+                continue;
+            }
+
+            int b = data[i++] & 0xff;
+            switch (state) {
+                case TEXT -> text(b);
+                case ESC -> escape(b);
+                case GS -> groupSeparator(b);
+                case SKIP_TO_NUL -> {
+                    if (b == 0) {
+                        state = State.TEXT;
+                    }
+                }
+                case PAYLOAD_HEADER -> {
+                    payloadHeader[payloadHeaderLength++] = (byte) b;
+                    if (payloadHeaderLength == payloadHeaderExpected) {
+                        endPayloadHeader();
+                    }
+                }
+                case ESC_J -> {
+                    state = State.TEXT;
+                    flushLine();
+                    listener.feed(b);
+                }
+                case ESC_D -> {
+                    state = State.TEXT;
+                    flushLine();
+                    listener.feedLines(b);
+                }
+                case GS_V_CUT -> skip(b == 'A' || b == 'B' ? 1 : 0);
+                case RASTER_HEADER -> {
+                    rasterHeader[rasterHeaderLength++] = (byte) b;
+                    if (rasterHeaderLength == RASTER_HEADER_LENGTH) {
+                        startRaster();
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+    }
+
+    /**
+     * End of the stream: the pending text line is reported, an incomplete raster image is dropped.
+     * @throws IOException If the listener could not print
+     * @throws InterruptedException If the listener was interrupted
+     */
+    public void close() throws IOException, InterruptedException {
+        flushLine();
+        state = State.TEXT;
+        row = null;
+    }
+
+    private void text(int b) throws IOException, InterruptedException {
+        if (b == LF) {
+            listener.text(line.toString());
+            line.setLength(0);
+        } else if (b == ESC) {
+            state = State.ESC;
+        } else if (b == GS) {
+            state = State.GS;
+        } else if (b >= 0x20 && b < 0x7f) {
+            line.append((char) b);
+            if (line.length() == MAX_LINE_LENGTH) {
+                flushLine();
+            }
+        }
+    }
+
+    private void escape(int b) {
+        if (b == 'J') {
+            state = State.ESC_J;
+        } else if (b == 'd') {
+            state = State.ESC_D;
+        } else if (b == '*') {
+            startPayloadHeader(PayloadCommand.BIT_IMAGE);
+        } else {
+            skip(ESC_PARAMETERS.getOrDefault((char) b, 0));
+        }
+    }
+
+    private void groupSeparator(int b) {
+        if (b == 'v') {
+            rasterHeaderLength = 0;
+            state = State.RASTER_HEADER;
+        } else if (b == 'V') {
+            state = State.GS_V_CUT;
+        } else if (b == '(') {
+            startPayloadHeader(PayloadCommand.FUNCTION);
+        } else if (b == '8') {
+            startPayloadHeader(PayloadCommand.GRAPHICS);
+        } else if (b == 'k') {
+            startPayloadHeader(PayloadCommand.BARCODE);
+        } else {
+            skip(GS_PARAMETERS.getOrDefault((char) b, 0));
+        }
+    }
+
+    private void skip(long count) {
+        skip = count;
+        state = count > 0 ? State.SKIP : State.TEXT;
+    }
+
+    private void startPayloadHeader(PayloadCommand command) {
+        payloadCommand = command;
+        payloadHeaderLength = 0;
+        payloadHeaderExpected = command.headerLength;
+        state = State.PAYLOAD_HEADER;
+    }
+
+    /**
+     * Skip the payload of a command once the bytes giving its length are received.
+     */
+    private void endPayloadHeader() {
+        int m = payloadHeader[0] & 0xff;
+        switch (payloadCommand) {
+            case BIT_IMAGE -> skip((long) lowHigh(payloadHeader, 1) * (m == 32 || m == 33 ? 3 : 1));
+            case FUNCTION -> skip(lowHigh(payloadHeader, 1));
+            case GRAPHICS -> skip(lowHigh(payloadHeader, 1) | (long) lowHigh(payloadHeader, 3) << 16);
+            case BARCODE -> {
+                if (m <= 6) {
+                    state = State.SKIP_TO_NUL;
+                } else if (payloadHeaderExpected == 1) {
+                    // The length byte follows
+                    payloadHeaderExpected = 2;
+                } else {
+                    skip(payloadHeader[1] & 0xff);
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected command " + payloadCommand);
+        }
+    }
+
+    private static int lowHigh(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    /**
+     * `GS v 0 m xL xH yL yH`, the `v` being already consumed.
+     */
+    private void startRaster() throws IOException, InterruptedException {
+        state = State.TEXT;
+        if (rasterHeader[0] != '0') {
+            return;
+        }
+        int rowBytes = (rasterHeader[2] & 0xff) | (rasterHeader[3] & 0xff) << 8;
+        int height = (rasterHeader[4] & 0xff) | (rasterHeader[5] & 0xff) << 8;
+        if (rowBytes == 0 || height == 0) {
+            return;
+        }
+        flushLine();
+        rasterMode = rasterHeader[1] & 0x03;
+        row = new byte[rowBytes];
+        rowLength = 0;
+        rowsLeft = height;
+        state = State.RASTER_ROWS;
+    }
+
+    private void endRow() throws IOException, InterruptedException {
+        byte[] complete = row;
+        rowLength = 0;
+        if (--rowsLeft == 0) {
+            row = null;
+            state = State.TEXT;
+            listener.rasterRow(complete, rasterMode);
+            listener.rasterEnd();
+        } else {
+            row = new byte[complete.length];
+            listener.rasterRow(complete, rasterMode);
+        }
+    }
+
+    private void flushLine() throws IOException, InterruptedException {
+        if (!line.isEmpty()) {
+            listener.text(line.toString());
+            line.setLength(0);
+        }
+    }
+}
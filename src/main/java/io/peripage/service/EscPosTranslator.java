@@ -0,0 +1,116 @@
+package io.peripage.service;
+
+import io.peripage.helper.ByteHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints the commands of an {@link EscPosParser} on a Peripage printer. Raster rows are truncated or padded
+ * to the row width of the printer and sent in chunks of `PrinterService.getChunkRows()` rows as soon as a
+ * chunk is complete or the image ends, so at most one chunk is buffered. Feeds become breaks and text lines
+ * are printed with {@link PrinterService#printlnASCII(String)}.
+ */
+public class EscPosTranslator implements EscPosParser.Listener {
+
+    /**
+     * Dot lines of a text line, as fed by {@link PrinterService#printASCII(String)} for a blank line.
+     */
+    private static final int LINE_DOTS = 30;
+
+    private static final int[] DOUBLED_BITS = new int[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int doubled = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((b & 1 << bit) != 0) {
+                    doubled |= 3 << (bit * 2);
+                }
+            }
+            DOUBLED_BITS[b] = doubled;
+        }
+    }
+
+    private final PrinterService printer;
+    private final int rowBytes;
+    private final int chunkRows;
+    private List<byte[]> pending = new ArrayList<>();
+
+    public EscPosTranslator(PrinterService printer) {
+        this.printer = printer;
+        this.rowBytes = printer.getPrinterType().getRowBytes();
+        this.chunkRows = printer.getChunkRows();
+    }
+
+    @Override
+    public void rasterRow(byte[] row, int mode) throws IOException, InterruptedException {
+        if ((mode & 1) != 0) {
+            row = doubleWidth(row);
+        }
+        row = ByteHelper.padRowBytes(rowBytes, row);
+        pending.add(row);
+        if ((mode & 2) != 0) {
+            pending.add(row);
+        }
+        if (pending.size() >= chunkRows) {
+            flush();
+        }
+    }
+
+    @Override
+    public void rasterEnd() throws IOException, InterruptedException {
+        flush();
+    }
+
+    @Override
+    public void feed(int dots) throws IOException, InterruptedException {
+        flush();
+        if (dots > 0) {
+            printer.printBreak(dots);
+        }
+    }
+
+    @Override
+    public void feedLines(int lines) throws IOException, InterruptedException {
+        flush();
+        for (int dots = lines * LINE_DOTS; dots > 0; dots -= 0xff) {
+            printer.printBreak(Math.min(dots, 0xff));
+        }
+    }
+
+    @Override
+    public void text(String line) throws IOException, InterruptedException {
+        flush();
+        printer.printlnASCII(line);
+    }
+
+    /**
+     * Print the rows and the text still buffered, at the end of the stream.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void close() throws IOException, InterruptedException {
+        flush();
+        printer.flushASCII();
+    }
+
+    private void flush() throws IOException, InterruptedException {
+        if (!pending.isEmpty()) {
+            List<byte[]> rows = pending;
+            pending = new ArrayList<>(chunkRows);
+            printer.printRowBytesList(rows);
+        }
+    }
+
+    private static byte[] doubleWidth(byte[] row) {
+        byte[] doubled = new byte[Math.min(row.length * 2, 0xffff)];
+        for (int i = 0; i < doubled.length / 2; i++) {
+            int bits = DOUBLED_BITS[row[i] & 0xff];
+            doubled[2 * i] = (byte) (bits >> 8);
+            doubled[2 * i + 1] = (byte) bits;
+        }
+        return doubled;
+    }
+}
@@ -0,0 +1,258 @@
+package io.peripage.service;
+
+import io.peripage.domain.JobStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Prints the files dropped into a directory. Each printer has its own sub-directory named after it:
+ * images (PNG, JPEG, PBM, PGM...) are printed like {@link BatchRenderer} converts them, `.txt` files as ASCII text.
+ *
+ * New files are reported by a {@link WatchService}, the directory is only listed at start and when the
+ * watch service overflows. Files are converted in parallel on a thread pool, ahead of the printer, and
+ * printed in the order they arrived on each printer through its {@link PrintQueue}. Printed files are
+ * moved to `archive/{printer}`, files that could not be printed to `archive/{printer}/failed`.
+ *
+ * Producers should write files elsewhere (or with a `.tmp` or `.part` extension) and move them into the
+ * folder once complete. Hidden files are ignored too.
+ */
+public class HotFolder implements AutoCloseable {
+
+    public static final String TENANT = "hot-folder";
+    public static final String FAILED_DIRECTORY = "failed";
+
+    private static final List<String> IGNORED_EXTENSIONS = List.of(".tmp", ".part");
+    private static final String TEXT_EXTENSION = ".txt";
+
+    private final Path root;
+    private final Path archive;
+    private final int maxPrepared;
+    private final ExecutorService preparers;
+    private final WatchService watchService;
+    private final Map<WatchKey, Inbox> inboxes = new ConcurrentHashMap<>();
+    private Thread watcher;
+
+    /**
+     * Printer sub-directory, with the files converted or printing and the ones waiting for their turn.
+     */
+    private class Inbox {
+
+        private final String name;
+        private final Path directory;
+        private final PrintQueue queue;
+        private final BatchRenderer renderer;
+        private final Set<Path> known = new HashSet<>();
+        private final Deque<Path> backlog = new ArrayDeque<>();
+        private int inFlight;
+
+        Inbox(String name, Path directory, PrintQueue queue) {
+            this.name = name;
+            this.directory = directory;
+            this.queue = queue;
+            this.renderer = new BatchRenderer(queue.getPrinter().getPrinterType(), queue.getPrinter().isLargeRasterMode(),
+                    ForkJoinPool.commonPool());
+        }
+
+        synchronized void add(Path file) {
+            if (known.add(file)) {
+                backlog.add(file);
+                dispatch();
+            }
+        }
+
+        /**
+         * Start converting waiting files while fewer than `maxPrepared` are converted or printing,
+         * so a burst of files does not hold every raster in memory at once.
+         */
+        private synchronized void dispatch() {
+            while (inFlight < maxPrepared && !backlog.isEmpty()) {
+                Path file = backlog.poll();
+                inFlight++;
+                Future<PrintTask.PrintAction> prepared = preparers.submit(() -> prepare(renderer, file));
+                PrintTask task = queue.submit(file.getFileName().toString(), PrintQueue.DEFAULT_PRIORITY, TENANT,
+                        printer -> await(prepared).print(printer));
+                task.getCompletion().whenComplete((result, error) -> done(file, task.getStatus() == JobStatus.DONE));
+            }
+        }
+
+        private void done(Path file, boolean printed) {
+            Path target = printed ? archive.resolve(name) : archive.resolve(name).resolve(FAILED_DIRECTORY);
+            try {
+                Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("Could not archive " + file + ": " + e.getMessage());
+            }
+            synchronized (this) {
+                known.remove(file);
+                inFlight--;
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Create a hot folder converting files on one thread per core.
+     * @param root directory containing one sub-directory per printer, created if needed
+     * @param archive directory receiving the printed files, created if needed
+     * @throws IOException If the directories could not be created or watched
+     */
+    public HotFolder(Path root, Path archive) throws IOException {
+        this(root, archive, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param root directory containing one sub-directory per printer, created if needed
+     * @param archive directory receiving the printed files, created if needed
+     * @param threads number of threads converting files
+     * @throws IOException If the directories could not be created or watched
+     */
+    public HotFolder(Path root, Path archive, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one conversion thread is needed");
+        }
+        this.root = Files.createDirectories(root);
+        this.archive = Files.createDirectories(archive);
+        this.maxPrepared = 2 * threads;
+        this.preparers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "peripage-hot-folder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    /**
+     * Watch the sub-directory of a printer, created if needed. Printers must be added before {@link #start()}.
+     * @param name name of the printer sub-directory
+     * @param queue the queue of the printer
+     * @throws IOException If the directories could not be created or watched
+     */
+    public void addPrinter(String name, PrintQueue queue) throws IOException {
+        Path directory = Files.createDirectories(root.resolve(name));
+        Files.createDirectories(archive.resolve(name).resolve(FAILED_DIRECTORY));
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        inboxes.put(key, new Inbox(name, directory, queue));
+    }
+
+    /**
+     * Queue the files already in the folder, oldest first, and start watching for new ones.
+     * @throws IOException If a printer sub-directory could not be listed
+     */
+    public void start() throws IOException {
+        for (Inbox inbox : inboxes.values()) {
+            scan(inbox);
+        }
+        watcher = new Thread(this::watch, "peripage-hot-folder-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Inbox inbox = inboxes.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, fall back on listing the directory
+                    try {
+                        scan(inbox);
+                    } catch (IOException e) {
+                        System.err.println("Could not list " + inbox.directory + ": " + e.getMessage());
+                    }
+                } else {
+                    Path file = inbox.directory.resolve((Path) event.context());
+                    if (isPrintable(file)) {
+                        inbox.add(file);
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void scan(Inbox inbox) throws IOException {
+        try (Stream<Path> files = Files.list(inbox.directory)) {
+            files.filter(HotFolder::isPrintable)
+                    .sorted(Comparator.comparing(HotFolder::lastModified).thenComparing(Comparator.naturalOrder()))
+                    .forEach(inbox::add);
+        }
+    }
+
+    private static PrintTask.PrintAction prepare(BatchRenderer renderer, Path file) throws IOException {
+        if (TEXT_EXTENSION.equals(BatchRenderer.extension(file))) {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            return printer -> {
+                printer.printlnASCII(text);
+                printer.flushASCII();
+            };
+        }
+        List<byte[]> rows = renderer.toRows(file);
+        return printer -> printer.printRowBytesList(rows);
+    }
+
+    private static PrintTask.PrintAction await(Future<PrintTask.PrintAction> prepared) throws IOException, InterruptedException {
+        try {
+            return prepared.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Could not convert file", e.getCause());
+        }
+    }
+
+    private static boolean isPrintable(Path file) {
+        String name = file.getFileName().toString();
+        String extension = BatchRenderer.extension(file);
+        return !name.startsWith(".") && !IGNORED_EXTENSIONS.contains(extension) && Files.isRegularFile(file)
+                && (TEXT_EXTENSION.equals(extension) || BatchRenderer.isImage(file));
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Stop watching the folder. Files already queued are still printed, the print queues are not closed.
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        watchService.close();
+        if (watcher != null) {
+            watcher.join();
+        }
+        preparers.shutdown();
+    }
+}
@@ -0,0 +1,380 @@
+package io.peripage.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport of a printer socket driven by a {@link SocketMultiplexer}.
+ *
+ * Bytes are written directly while nothing is queued and the socket accepts them; the rest is copied, since
+ * callers reuse their pooled buffers, and queued until the event loop sees the socket writable. A caller
+ * blocks once more than `HIGH_WATER_BYTES` are queued, until the queue drains below `LOW_WATER_BYTES`, so a
+ * slow printer holds back its own jobs without holding a thread.
+ *
+ * Query responses carry no length, so {@link #askPrinter(byte[])} frames them by silence: the response is
+ * complete once the printer stopped sending for `RESPONSE_GAP_MS`, which answers in a few milliseconds where
+ * the blocking transport always waits 250 ms. A query may wait behind seconds of queued raster data, so the
+ * response deadline only starts once the query left the queue.
+ */
+public class MultiplexedTransportService extends TransportService {
+
+    private static final int HIGH_WATER_BYTES = 64 * 1024;
+    private static final int LOW_WATER_BYTES = 16 * 1024;
+    private static final long CONNECT_TIMEOUT_MS = 10_000;
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+    private static final long RESPONSE_TIMEOUT_MS = 250;
+    private static final long RESPONSE_GAP_MS = 20;
+
+    private final SocketMultiplexer multiplexer;
+    private final InetSocketAddress address;
+
+    // Everything below is guarded by the lock, shared with the event loop
+    private final Object lock = new Object();
+    private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final ByteArrayOutputStream inbound = new ByteArrayOutputStream();
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected;
+    private IOException failure;
+    private long queuedBytes;
+    private long toldBytes;
+    private long sentBytes;
+    private long lastReceivedNanos;
+
+    MultiplexedTransportService(SocketMultiplexer multiplexer, InetSocketAddress address) {
+        this.multiplexer = multiplexer;
+        this.address = address;
+    }
+
+    /**
+     * Open the socket, wait for the event loop to complete the connection and reset the printer.
+     * @throws IOException If the socket could not be connected
+     * @throws InterruptedException If interrupted while connecting
+     */
+    @Override
+    public void connect() throws IOException, InterruptedException {
+        SocketChannel opened = SocketChannel.open();
+        opened.configureBlocking(false);
+        synchronized (lock) {
+            channel = opened;
+            key = null;
+            connected = false;
+            failure = null;
+            outbound.clear();
+            queuedBytes = 0;
+            toldBytes = 0;
+            sentBytes = 0;
+            inbound.reset();
+        }
+        boolean immediate = opened.connect(address);
+        multiplexer.execute(() -> register(opened, immediate));
+
+        synchronized (lock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MS);
+            while (!connected && failure == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    fail(new IOException("Timed out connecting to " + address));
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+            ensureConnected();
+        }
+        reset();
+    }
+
+    @Override
+    public boolean isConnected() {
+        synchronized (lock) {
+            return connected && failure == null;
+        }
+    }
+
+    @Override
+    public void reconnect() throws IOException, InterruptedException {
+        disconnect();
+        connect();
+    }
+
+    /**
+     * Wait for the queued bytes to be sent, then close the socket.
+     * @throws IOException If the socket could not be closed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public void disconnect() throws IOException, InterruptedException {
+        SocketChannel closing;
+        synchronized (lock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+            long left;
+            while (connected && failure == null && !outbound.isEmpty() && (left = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+            closing = channel;
+            channel = null;
+            connected = false;
+            outbound.clear();
+            queuedBytes = 0;
+            lock.notifyAll();
+        }
+        if (closing != null) {
+            closing.close();
+            multiplexer.wakeup();
+        }
+    }
+
+    @Override
+    public void tellPrinter(byte[] byteseq, int offset, int length) throws IOException {
+        send(ByteBuffer.wrap(byteseq, offset, length), false);
+    }
+
+    /**
+     * Send the remaining bytes of a buffer to the printer without response.
+     * The position of the buffer is moved to its limit.
+     * @param buffer bytes data
+     * @throws IOException
+     */
+    @Override
+    public void tellPrinter(ByteBuffer buffer) throws IOException {
+        send(buffer, false);
+    }
+
+    /**
+     * Send a query and return its response once the printer stopped sending, or after 250 ms
+     * without any response, counted from the moment the query left the outbound queue. Bytes received
+     * before the query are discarded.
+     * @param byteseq the query
+     * @return the response, possibly empty
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    public byte[] askPrinter(byte[] byteseq) throws IOException, InterruptedException {
+        synchronized (lock) {
+            inbound.reset();
+        }
+        awaitSent(send(ByteBuffer.wrap(byteseq), true));
+        synchronized (lock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESPONSE_TIMEOUT_MS);
+            while (failure == null) {
+                long until = inbound.size() == 0
+                        ? deadline : lastReceivedNanos + TimeUnit.MILLISECONDS.toNanos(RESPONSE_GAP_MS);
+                long left = until - System.nanoTime();
+                if (left <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+            ensureConnected();
+            return takeInbound();
+        }
+    }
+
+    @Override
+    public long getToldBytes() {
+        synchronized (lock) {
+            return toldBytes;
+        }
+    }
+
+    /**
+     * Wait until the outbound queue drained past a count of told bytes.
+     * @param toldBytes the count to wait for, from {@link #getToldBytes()}
+     * @throws IOException If the transport failed, or the bytes were not sent within 30 seconds
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public void awaitSent(long toldBytes) throws IOException, InterruptedException {
+        synchronized (lock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+            while (connected && failure == null && sentBytes < toldBytes) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new IOException("Timed out sending to " + address);
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+            ensureConnected();
+        }
+    }
+
+    /**
+     * Receive the bytes the printer already sent, without waiting for more.
+     * @return the received bytes, possibly none
+     */
+    @Override
+    public byte[] listenPrinter() {
+        synchronized (lock) {
+            return takeInbound();
+        }
+    }
+
+    /**
+     * Called by the event loop when the socket is ready.
+     */
+    void handle(SelectionKey readyKey, ByteBuffer readBuffer) {
+        try {
+            if (readyKey.isConnectable()) {
+                ((SocketChannel) readyKey.channel()).finishConnect();
+                synchronized (lock) {
+                    connected = true;
+                    readyKey.interestOps(outbound.isEmpty() ? SelectionKey.OP_READ
+                            : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    lock.notifyAll();
+                }
+            }
+            if (readyKey.isReadable()) {
+                read(readyKey, readBuffer);
+            }
+            if (readyKey.isValid() && readyKey.isWritable()) {
+                synchronized (lock) {
+                    flushOutbound(readyKey);
+                }
+            }
+        } catch (CancelledKeyException e) {
+            // Disconnected meanwhile
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Mark the transport as failed, wake up the waiting callers and close the socket.
+     */
+    void fail(IOException e) {
+        SocketChannel closing;
+        synchronized (lock) {
+            if (failure == null) {
+                failure = e;
+            }
+            closing = channel;
+            connected = false;
+            outbound.clear();
+            queuedBytes = 0;
+            lock.notifyAll();
+        }
+        if (closing != null) {
+            try {
+                closing.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+        }
+    }
+
+    private void register(SocketChannel opened, boolean immediate) {
+        try {
+            SelectionKey registered = opened.register(multiplexer.getSelector(),
+                    immediate ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            synchronized (lock) {
+                key = registered;
+                if (immediate) {
+                    connected = true;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Write what the socket accepts right now and queue the rest.
+     * @param force queue even above the high water mark, for short queries
+     * @return the count of told bytes once this buffer is included
+     */
+    private long send(ByteBuffer buffer, boolean force) throws IOException {
+        synchronized (lock) {
+            try {
+                while (!force && connected && failure == null && queuedBytes > 0
+                        && queuedBytes + buffer.remaining() > HIGH_WATER_BYTES) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the printer socket");
+            }
+            ensureConnected();
+            toldBytes += buffer.remaining();
+            if (outbound.isEmpty()) {
+                sentBytes += channel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return toldBytes;
+                }
+            }
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+            outbound.add(copy);
+            queuedBytes += copy.remaining();
+            if (outbound.size() == 1) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                multiplexer.wakeup();
+            }
+            return toldBytes;
+        }
+    }
+
+    private void flushOutbound(SelectionKey readyKey) throws IOException {
+        SocketChannel socket = (SocketChannel) readyKey.channel();
+        boolean drained = false;
+        while (!outbound.isEmpty()) {
+            ByteBuffer head = outbound.peek();
+            int written = socket.write(head);
+            queuedBytes -= written;
+            sentBytes += written;
+            if (head.hasRemaining()) {
+                break;
+            }
+            outbound.poll();
+            drained = true;
+        }
+        if (outbound.isEmpty()) {
+            readyKey.interestOps(SelectionKey.OP_READ);
+        }
+        // A query waiting in awaitSent is always the end of a queued buffer
+        if (drained || queuedBytes <= LOW_WATER_BYTES) {
+            lock.notifyAll();
+        }
+    }
+
+    private void read(SelectionKey readyKey, ByteBuffer readBuffer) throws IOException {
+        SocketChannel socket = (SocketChannel) readyKey.channel();
+        int read;
+        while ((read = socket.read(readBuffer.clear())) > 0) {
+            byte[] received = new byte[read];
+            readBuffer.flip().get(received);
+            synchronized (lock) {
+                inbound.write(received, 0, read);
+                lastReceivedNanos = System.nanoTime();
+                lock.notifyAll();
+            }
+        }
+        if (read < 0) {
+            fail(new IOException("Connection closed by " + address));
+        }
+    }
+
+    private byte[] takeInbound() {
+        byte[] received = inbound.toByteArray();
+        inbound.reset();
+        return received;
+    }
+
+    private void ensureConnected() throws IOException {
+        if (failure != null) {
+            throw new IOException("Transport failed: " + failure.getMessage(), failure);
+        }
+        if (!connected) {
+            throw new IOException("Transport is not connected");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package io.peripage.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls the pauses inserted between raster rows and text lines.
+ *
+ * A fixed controller reproduces the historical pacing (10 ms per raster row,
+ * {@link PrinterService#DEFAULT_SLEEP_TIMEOUT} per text line). An adaptive controller measures how
+ * long each row write takes: a write blocking longer than the blocked write threshold means the
+ * link or the printer buffer is saturated, and the row delay is increased multiplicatively. After a
+ * streak of fast writes the delay is decreased step by step. Rows reported as lost, by
+ * {@link PrinterService#checkDelivery(String)} for instance, double the delay at once.
+ *
+ * Writes to a buffered link hardly ever block, so the adaptive delay alone does not tell the rate the
+ * printer sustains: {@link PrinterService#calibratePacing(int, PacingProfileStore)} measures it with
+ * constant controllers and delivery checks. A controller created from a measured rate never goes faster
+ * than that rate, the fast writes only bring the delay back down to it after a slowdown.
+ */
+public class PacingController {
+
+    public static final long DEFAULT_ROW_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    public static final long DEFAULT_BLOCKED_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long MIN_ROW_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    /**
+     * Fastest rate a controller paces rows at.
+     */
+    public static final double MAX_ROWS_PER_SECOND = TimeUnit.SECONDS.toNanos(1) / (double) MIN_ROW_DELAY_NANOS;
+
+    private static final long MAX_ROW_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long DECREASE_STEP_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    private static final int FAST_STREAK_BEFORE_DECREASE = 32;
+    private static final double THROUGHPUT_SMOOTHING = 0.05;
+
+    private final boolean adaptive;
+    private final long blockedWriteNanos;
+    private final long minRowDelayNanos;
+
+    private long rowDelayNanos;
+    private int fastStreak;
+    private long lastRowNanos;
+    private double rowsPerSecond;
+    private long rows;
+    private long blockedWrites;
+    private long lostRows;
+
+    private PacingController(boolean adaptive, long rowDelayNanos, long minRowDelayNanos, long blockedWriteNanos) {
+        this.adaptive = adaptive;
+        this.rowDelayNanos = rowDelayNanos;
+        this.minRowDelayNanos = minRowDelayNanos;
+        this.blockedWriteNanos = blockedWriteNanos;
+    }
+
+    /**
+     * Create a controller with the historical fixed pauses.
+     */
+    public static PacingController fixed() {
+        return new PacingController(false, DEFAULT_ROW_DELAY_NANOS, MIN_ROW_DELAY_NANOS, DEFAULT_BLOCKED_WRITE_NANOS);
+    }
+
+    /**
+     * Create a controller pausing the same time after every row, whatever happens.
+     * @param rowsPerSecond rows per second allowed, write time excluded
+     */
+    public static PacingController constant(double rowsPerSecond) {
+        long delay = delayFor(rowsPerSecond);
+        return new PacingController(false, delay, delay, DEFAULT_BLOCKED_WRITE_NANOS);
+    }
+
+    /**
+     * Create an adaptive controller starting from the historical row delay.
+     */
+    public static PacingController adaptive() {
+        return new PacingController(true, DEFAULT_ROW_DELAY_NANOS, MIN_ROW_DELAY_NANOS, DEFAULT_BLOCKED_WRITE_NANOS);
+    }
+
+    /**
+     * Create an adaptive controller starting from a known sustainable rate, for example
+     * the one measured by a calibration run. The controller slows down when writes block or rows are
+     * lost, but never paces faster than this rate.
+     * @param rowsPerSecond sustainable rows per second
+     */
+    public static PacingController adaptive(double rowsPerSecond) {
+        long delay = delayFor(rowsPerSecond);
+        return new PacingController(true, delay, delay, DEFAULT_BLOCKED_WRITE_NANOS);
+    }
+
+    /**
+     * Record a row write and pause before the next one.
+     * @param writeNanos time spent writing the row to the transport
+     * @throws InterruptedException If the pause is interrupted
+     */
+    public void afterRow(long writeNanos) throws InterruptedException {
+        long delay;
+        synchronized (this) {
+            rows++;
+            long now = System.nanoTime();
+            if (lastRowNanos != 0) {
+                // From row to row, so the pause after the previous row is counted
+                double rate = TimeUnit.SECONDS.toNanos(1) / (double) Math.max(1, now - lastRowNanos);
+                rowsPerSecond = rowsPerSecond == 0 ? rate : rowsPerSecond + THROUGHPUT_SMOOTHING * (rate - rowsPerSecond);
+            }
+            lastRowNanos = now;
+
+            if (writeNanos > blockedWriteNanos) {
+                blockedWrites++;
+                fastStreak = 0;
+                if (adaptive) {
+                    rowDelayNanos = bound(rowDelayNanos * 3 / 2);
+                }
+            } else if (adaptive && ++fastStreak >= FAST_STREAK_BEFORE_DECREASE) {
+                fastStreak = 0;
+                rowDelayNanos = bound(rowDelayNanos - DECREASE_STEP_NANOS);
+            }
+            delay = rowDelayNanos;
+        }
+        TimeUnit.NANOSECONDS.sleep(delay);
+    }
+
+    /**
+     * Pause after a text line. Text lines are paced as 25 raster rows, which is
+     * {@link PrinterService#DEFAULT_SLEEP_TIMEOUT} with the historical row delay.
+     * @throws InterruptedException If the pause is interrupted
+     */
+    public void afterLine() throws InterruptedException {
+        long delay;
+        synchronized (this) {
+            delay = adaptive ? rowDelayNanos * 25 : TimeUnit.MILLISECONDS.toNanos(PrinterService.DEFAULT_SLEEP_TIMEOUT);
+        }
+        TimeUnit.NANOSECONDS.sleep(delay);
+    }
+
+    /**
+     * Report rows that were dropped or printed garbled. The row delay is doubled.
+     * @param count number of rows lost
+     */
+    public synchronized void reportLostRows(int count) {
+        lostRows += count;
+        fastStreak = 0;
+        if (adaptive) {
+            rowDelayNanos = bound(rowDelayNanos * 2);
+        }
+    }
+
+    /**
+     * Restart the throughput measurement, for example at the start of a new job.
+     */
+    public synchronized void resetMeasurement() {
+        lastRowNanos = 0;
+        rowsPerSecond = 0;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public synchronized long getRowDelayNanos() {
+        return rowDelayNanos;
+    }
+
+    /**
+     * Smoothed rows per second achieved by the last rows, pauses included.
+     */
+    public synchronized double getAchievedRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    /**
+     * Rows per second allowed by the current row delay, write time excluded.
+     */
+    public synchronized double getTargetRowsPerSecond() {
+        return TimeUnit.SECONDS.toNanos(1) / (double) rowDelayNanos;
+    }
+
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    public synchronized long getBlockedWrites() {
+        return blockedWrites;
+    }
+
+    public synchronized long getLostRows() {
+        return lostRows;
+    }
+
+    private static long delayFor(double rowsPerSecond) {
+        return clamp((long) (TimeUnit.SECONDS.toNanos(1) / rowsPerSecond));
+    }
+
+    private long bound(long delay) {
+        return Math.max(minRowDelayNanos, clamp(delay));
+    }
+
+    private static long clamp(long delay) {
+        return Math.max(MIN_ROW_DELAY_NANOS, Math.min(MAX_ROW_DELAY_NANOS, delay));
+    }
+}
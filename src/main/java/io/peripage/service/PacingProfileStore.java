@@ -0,0 +1,75 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalDouble;
+import java.util.Properties;
+
+/**
+ * Persists the sustainable rows per second measured by a pacing calibration, per printer type
+ * and firmware version, in a properties file.
+ */
+public class PacingProfileStore {
+
+    private final Path file;
+
+    /**
+     * Create a store backed by `~/.peripage/pacing.properties`.
+     */
+    public PacingProfileStore() {
+        this(Path.of(System.getProperty("user.home"), ".peripage", "pacing.properties"));
+    }
+
+    public PacingProfileStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the calibrated rate of a printer.
+     * @param printerType Printer type
+     * @param firmware Firmware version as returned by `Device.getFirmware()`
+     * @return the sustainable rows per second, if a calibration was saved
+     * @throws IOException If the file could not be read
+     */
+    public synchronized OptionalDouble getRowsPerSecond(PrinterType printerType, String firmware) throws IOException {
+        String value = load().getProperty(key(printerType, firmware));
+        return value == null ? OptionalDouble.empty() : OptionalDouble.of(Double.parseDouble(value));
+    }
+
+    /**
+     * Save the calibrated rate of a printer.
+     * @param printerType Printer type
+     * @param firmware Firmware version as returned by `Device.getFirmware()`
+     * @param rowsPerSecond the sustainable rows per second
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void saveRowsPerSecond(PrinterType printerType, String firmware, double rowsPerSecond) throws IOException {
+        Properties properties = load();
+        properties.setProperty(key(printerType, firmware), Double.toString(rowsPerSecond));
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (OutputStream os = Files.newOutputStream(file)) {
+            properties.store(os, "Peripage pacing calibration, rows per second");
+        }
+    }
+
+    private Properties load() throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream is = Files.newInputStream(file)) {
+                properties.load(is);
+            }
+        }
+        return properties;
+    }
+
+    private static String key(PrinterType printerType, String firmware) {
+        return printerType.name() + "." + firmware.trim().replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
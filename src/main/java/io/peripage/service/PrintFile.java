@@ -0,0 +1,187 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import io.peripage.helper.ByteHelper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Print-ready file holding the exact byte stream sent to the printer for an image.
+ *
+ * Layout: `PPRW`, version (1 byte), printer type name length (1 byte) and name (ASCII), bytes per row
+ * (2 bytes), height (4 bytes), chunk height (2 bytes), reset mode (1 byte), then the wire bytes:
+ * for each chunk, the reset request if required, the raster header and the rows. Numbers are little
+ * endian. The header describes the chunk layout, so the replay can pace the rows without parsing the
+ * wire bytes.
+ */
+public class PrintFile {
+
+    public static final String EXTENSION = ".ppr";
+
+    private static final byte[] MAGIC = "PPRW".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final byte[] RESET = ByteHelper.hexStringToByteArray(TransportService.RESET_REQUEST);
+
+    private final PrinterType printerType;
+    private final int height;
+    private final int chunkRows;
+    private final PrinterService.ResetMode resetMode;
+    private final MappedByteBuffer wire;
+
+    private PrintFile(PrinterType printerType, int height, int chunkRows, PrinterService.ResetMode resetMode, MappedByteBuffer wire) {
+        this.printerType = printerType;
+        this.height = height;
+        this.chunkRows = chunkRows;
+        this.resetMode = resetMode;
+        this.wire = wire;
+    }
+
+    /**
+     * Write the wire byte stream of rows into a print-ready file.
+     * @param file the file to write
+     * @param printerType target printer type
+     * @param rows the rows, truncated/padded to `PrinterType.getRowBytes()`
+     * @param chunkRows number of rows per chunk, up to `0xffff`
+     * @param resetMode {@link PrinterService.ResetMode#EACH_CHUNK} or {@link PrinterService.ResetMode#ONCE}
+     * @throws IOException If the file could not be written
+     */
+    static void write(Path file, PrinterType printerType, List<byte[]> rows, int chunkRows, PrinterService.ResetMode resetMode) throws IOException {
+        int rowBytes = printerType.getRowBytes();
+        byte[] name = printerType.name().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2 + name.length + 9).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put((byte) VERSION).put((byte) name.length).put(name)
+                .putShort((short) rowBytes).putInt(rows.size()).putShort((short) chunkRows).put((byte) resetMode.ordinal());
+
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            os.write(header.array());
+            for (int chunkStart = 0; chunkStart < rows.size(); chunkStart += chunkRows) {
+                int chunkHeight = Math.min(chunkRows, rows.size() - chunkStart);
+                if (resetMode == PrinterService.ResetMode.EACH_CHUNK || (resetMode == PrinterService.ResetMode.ONCE && chunkStart == 0)) {
+                    os.write(RESET);
+                }
+                os.write(PrinterService.rasterHeader(rowBytes, chunkHeight));
+                for (int i = chunkStart; i < chunkStart + chunkHeight; i++) {
+                    byte[] row = rows.get(i);
+                    os.write(row, 0, Math.min(row.length, rowBytes));
+                    for (int pad = row.length; pad < rowBytes; pad++) {
+                        os.write(0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a print-ready file. The wire bytes are memory mapped, not read, after checking that their
+     * length matches the chunk layout of the header, so a truncated file fails here rather than in the
+     * middle of a print.
+     * @param file the file to open
+     * @return the opened file
+     * @throws IOException If the file is not a valid print-ready file
+     */
+    public static PrintFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            if (mapped.remaining() < MAGIC.length + 2) {
+                throw new IOException("Not a print-ready file: " + file);
+            }
+            mapped.get(magic);
+            int version = mapped.get();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("Not a print-ready file: " + file);
+            }
+            byte[] name = new byte[Byte.toUnsignedInt(mapped.get())];
+            if (mapped.remaining() < name.length + 9) {
+                throw corrupted(file, "truncated header");
+            }
+            mapped.get(name);
+            PrinterType printerType = printerType(file, new String(name, StandardCharsets.US_ASCII));
+            int rowBytes = Short.toUnsignedInt(mapped.getShort());
+            int height = mapped.getInt();
+            int chunkRows = Short.toUnsignedInt(mapped.getShort());
+            int resetOrdinal = Byte.toUnsignedInt(mapped.get());
+            if (rowBytes != printerType.getRowBytes()) {
+                throw corrupted(file, rowBytes + " bytes per row for " + printerType);
+            }
+            if (height < 0 || chunkRows == 0) {
+                throw corrupted(file, "height " + height + " in chunks of " + chunkRows + " rows");
+            }
+            if (resetOrdinal >= PrinterService.ResetMode.values().length) {
+                throw corrupted(file, "unknown reset mode " + resetOrdinal);
+            }
+            PrinterService.ResetMode resetMode = PrinterService.ResetMode.values()[resetOrdinal];
+
+            long expected = wireLength(rowBytes, height, chunkRows, resetMode);
+            if (mapped.remaining() != expected) {
+                throw corrupted(file, mapped.remaining() + " wire bytes instead of " + expected);
+            }
+            return new PrintFile(printerType, height, chunkRows, resetMode, mapped.slice());
+        }
+    }
+
+    /**
+     * Length of the wire bytes written by {@link #write(Path, PrinterType, List, int, PrinterService.ResetMode)}.
+     */
+    private static long wireLength(int rowBytes, int height, int chunkRows, PrinterService.ResetMode resetMode) {
+        long chunks = (height + (long) chunkRows - 1) / chunkRows;
+        long resets = switch (resetMode) {
+            case EACH_CHUNK -> chunks;
+            case ONCE -> Math.min(chunks, 1);
+            case NONE -> 0;
+        };
+        return resets * RESET.length + chunks * PrinterService.rasterHeader(rowBytes, 0).length + (long) height * rowBytes;
+    }
+
+    private static PrinterType printerType(Path file, String name) throws IOException {
+        try {
+            return PrinterType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw corrupted(file, "unknown printer type " + name);
+        }
+    }
+
+    private static IOException corrupted(Path file, String reason) {
+        return new IOException("Corrupted print-ready file " + file + ": " + reason);
+    }
+
+    public PrinterType getPrinterType() {
+        return printerType;
+    }
+
+    /**
+     * Height of the image in dots (number of rows).
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    int getChunkRows() {
+        return chunkRows;
+    }
+
+    PrinterService.ResetMode getResetMode() {
+        return resetMode;
+    }
+
+    /**
+     * Wire bytes, positioned at their start. Each call returns an independent view.
+     */
+    ByteBuffer getWire() {
+        return wire.duplicate();
+    }
+}
@@ -0,0 +1,353 @@
+package io.peripage.service;
+
+import io.peripage.domain.JobStatus;
+import io.peripage.domain.PrintQuality;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of jobs for a single printer. Jobs are printed one after the other by a dedicated
+ * thread, so the printer stays connected between jobs and callers never wait for the transmission.
+ * If the connection was lost, the printer is reconnected while the next job is converted.
+ *
+ * Jobs with a higher priority are printed first. When such a job is submitted while a lower priority
+ * job is printing, the running job is preempted at its next raster chunk boundary: the urgent job is
+ * printed, then the preempted job resumes after a printer reset. Jobs of the same priority are served
+ * in turn for each tenant, then in submission order. Cancelling a running job stops it at its next
+ * chunk boundary.
+ *
+ * Jobs submitted with {@link #submitOnce(String, byte[], String, int, String, PrintTask.PrintAction)} are
+ * coalesced with an identical job submitted within the duplicate window, so upstream retries are neither
+ * converted nor printed twice.
+ */
+public class PrintQueue implements AutoCloseable {
+
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final String DEFAULT_TENANT = "default";
+    public static final Duration DEFAULT_DUPLICATE_WINDOW = Duration.ofSeconds(30);
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    private final PrinterService printer;
+    private final Thread worker;
+
+    /**
+     * Waiting jobs by priority (highest first), then by tenant in service order.
+     */
+    private final TreeMap<Integer, LinkedHashMap<String, Deque<PrintTask>>> waiting = new TreeMap<>(Comparator.reverseOrder());
+    private final Deque<PrintTask> running = new ArrayDeque<>();
+    /**
+     * Jobs submitted once within the duplicate window, by idempotency key and by content, oldest first.
+     */
+    private final LinkedHashMap<String, PrintTask> recent = new LinkedHashMap<>();
+    private int waitingCount;
+    private boolean closed;
+    private volatile int qualityThreshold;
+    private volatile Duration duplicateWindow = DEFAULT_DUPLICATE_WINDOW;
+
+    /**
+     * @param name name of the printer, used to name the worker thread
+     * @param printer the printer, connected or not
+     */
+    public PrintQueue(String name, PrinterService printer) {
+        this.printer = printer;
+        this.worker = new Thread(this::work, "peripage-" + name);
+        this.worker.setDaemon(true);
+        printer.setChunkBoundary(this::atChunkBoundary);
+        this.worker.start();
+    }
+
+    /**
+     * Add a job with the default priority and tenant.
+     * @param description short description of the job
+     * @param action the printing work
+     * @return the queued task
+     */
+    public PrintTask submit(String description, PrintTask.PrintAction action) {
+        return submit(description, DEFAULT_PRIORITY, DEFAULT_TENANT, action);
+    }
+
+    /**
+     * Add a job to the queue.
+     * @param description short description of the job
+     * @param priority priority of the job, higher values are printed first and preempt lower ones
+     * @param tenant tenant the job is submitted for
+     * @param action the printing work
+     * @return the queued task
+     */
+    public synchronized PrintTask submit(String description, int priority, String tenant, PrintTask.PrintAction action) {
+        if (closed) {
+            throw new IllegalStateException("Print queue is closed");
+        }
+        PrintTask task = new PrintTask(NEXT_ID.getAndIncrement(), description, priority, tenant, action, this);
+        waiting.computeIfAbsent(priority, p -> new LinkedHashMap<>())
+                .computeIfAbsent(tenant, t -> new ArrayDeque<>())
+                .add(task);
+        waitingCount++;
+        notifyAll();
+        return task;
+    }
+
+    /**
+     * Add a job unless it duplicates a job submitted within the duplicate window: a job with the same
+     * idempotency key, or else with the same description and content for the same printer type. The task of
+     * the original job is then returned, whether it is queued, printing or printed, and nothing is queued.
+     * Failed and cancelled jobs are not coalesced, so their retries print.
+     * @param idempotencyKey key given by the client to its retries, or null
+     * @param content payload of the job, the image file or the text for instance
+     * @param description short description of the job
+     * @param priority priority of the job, higher values are printed first and preempt lower ones
+     * @param tenant tenant the job is submitted for
+     * @param action the printing work
+     * @return the queued task, or the task of the original job
+     */
+    public PrintTask submitOnce(String idempotencyKey, byte[] content, String description, int priority, String tenant,
+                                PrintTask.PrintAction action) {
+        String contentKey = contentKey(description, content);
+        String clientKey = idempotencyKey == null ? null : "key:" + idempotencyKey;
+        synchronized (this) {
+            expireRecent();
+            PrintTask original = findRecent(clientKey);
+            if (original == null) {
+                original = findRecent(contentKey);
+            }
+            if (original != null) {
+                return original;
+            }
+
+            PrintTask task = submit(description, priority, tenant, action);
+            if (clientKey != null) {
+                recent.remove(clientKey);
+                recent.put(clientKey, task);
+            }
+            recent.remove(contentKey);
+            recent.put(contentKey, task);
+            return task;
+        }
+    }
+
+    /**
+     * Change the window in which {@link #submitOnce(String, byte[], String, int, String, PrintTask.PrintAction)}
+     * coalesces duplicates, {@link #DEFAULT_DUPLICATE_WINDOW} by default.
+     * @param duplicateWindow time after submission during which a job is coalesced, zero to disable
+     */
+    public void setDuplicateWindow(Duration duplicateWindow) {
+        if (duplicateWindow.isNegative()) {
+            throw new IllegalArgumentException("Duplicate window must not be negative");
+        }
+        this.duplicateWindow = duplicateWindow;
+    }
+
+    public Duration getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    /**
+     * Number of jobs queued or printing.
+     */
+    public synchronized int getDepth() {
+        return waitingCount + running.size();
+    }
+
+    /**
+     * Drop image jobs to a cheaper quality tier while the queue is deep, see {@link #qualityFor(PrintQuality)}.
+     * @param qualityThreshold depth above which jobs are printed one tier cheaper than requested, 0 to disable
+     */
+    public void setQualityThreshold(int qualityThreshold) {
+        if (qualityThreshold < 0) {
+            throw new IllegalArgumentException("Quality threshold must not be negative");
+        }
+        this.qualityThreshold = qualityThreshold;
+    }
+
+    public int getQualityThreshold() {
+        return qualityThreshold;
+    }
+
+    /**
+     * Quality tier to print a job with, to be called by the job when it starts: one tier cheaper than
+     * requested while more jobs than the quality threshold are queued or printing.
+     * @param requested quality tier requested for the job
+     * @return the quality tier to use
+     */
+    public PrintQuality qualityFor(PrintQuality requested) {
+        int threshold = qualityThreshold;
+        return threshold > 0 && getDepth() > threshold ? requested.cheaper() : requested;
+    }
+
+    public PrinterService getPrinter() {
+        return printer;
+    }
+
+    /**
+     * Stop accepting jobs, wait for the queued ones and disconnect the printer.
+     */
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        worker.join();
+        printer.disconnect();
+    }
+
+    synchronized void remove(PrintTask task) {
+        LinkedHashMap<String, Deque<PrintTask>> tenants = waiting.get(task.getPriority());
+        if (tenants == null) {
+            return;
+        }
+        Deque<PrintTask> tasks = tenants.get(task.getTenant());
+        if (tasks != null && tasks.remove(task)) {
+            waitingCount--;
+            if (tasks.isEmpty()) {
+                tenants.remove(task.getTenant());
+            }
+            if (tenants.isEmpty()) {
+                waiting.remove(task.getPriority());
+            }
+        }
+    }
+
+    private PrintTask findRecent(String key) {
+        PrintTask task = key == null ? null : recent.get(key);
+        if (task == null || task.getStatus() == JobStatus.FAILED || task.getStatus() == JobStatus.CANCELLED) {
+            return null;
+        }
+        return task;
+    }
+
+    private void expireRecent() {
+        Instant oldest = Instant.now().minus(duplicateWindow);
+        Iterator<PrintTask> iterator = recent.values().iterator();
+        while (iterator.hasNext() && !iterator.next().getSubmittedAt().isAfter(oldest)) {
+            iterator.remove();
+        }
+    }
+
+    private String contentKey(String description, byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(description.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content);
+            return "content:" + printer.getPrinterType() + ":" + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Take the next job with a priority strictly above the given one. The tenant served is moved
+     * to the end of its priority level, so tenants are served in turn.
+     */
+    private synchronized PrintTask poll(int abovePriority) {
+        if (waiting.isEmpty() || waiting.firstKey() <= abovePriority) {
+            return null;
+        }
+        LinkedHashMap<String, Deque<PrintTask>> tenants = waiting.firstEntry().getValue();
+        Iterator<Map.Entry<String, Deque<PrintTask>>> iterator = tenants.entrySet().iterator();
+        Map.Entry<String, Deque<PrintTask>> first = iterator.next();
+        PrintTask task = first.getValue().poll();
+        iterator.remove();
+        if (!first.getValue().isEmpty()) {
+            tenants.put(first.getKey(), first.getValue());
+        }
+        if (tenants.isEmpty()) {
+            waiting.pollFirstEntry();
+        }
+        waitingCount--;
+        return task;
+    }
+
+    private void work() {
+        while (true) {
+            PrintTask task;
+            synchronized (this) {
+                while (waitingCount == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only closing stops the worker, the jobs queued meanwhile would never print
+                    }
+                }
+                if (waitingCount == 0) {
+                    return;
+                }
+                task = poll(Integer.MIN_VALUE);
+            }
+            execute(task);
+        }
+    }
+
+    private void execute(PrintTask task) {
+        if (!task.start()) {
+            return;
+        }
+        if (!printer.isConnected()) {
+            // The job converts its content while the printer connects, and fails if the connection does
+            printer.connectAsync();
+        }
+
+        synchronized (this) {
+            running.push(task);
+        }
+        try {
+            task.run(printer);
+        } finally {
+            synchronized (this) {
+                running.pop();
+            }
+        }
+    }
+
+    /**
+     * Called by the printer before each raster chunk. Stops the running job if it was cancelled and
+     * prints the waiting jobs of higher priority.
+     * @return true if other jobs were printed, so the printer must be reset before the next chunk
+     */
+    private boolean atChunkBoundary() {
+        if (Thread.currentThread() != worker) {
+            return false;
+        }
+        PrintTask current;
+        synchronized (this) {
+            current = running.peek();
+        }
+        if (current == null) {
+            return false;
+        }
+        if (current.isCancelRequested()) {
+            throw new CancellationException("Job " + current.getId() + " cancelled");
+        }
+
+        boolean preempted = false;
+        PrintTask urgent;
+        while ((urgent = poll(current.getPriority())) != null) {
+            current.setPreempted(true);
+            execute(urgent);
+            preempted = true;
+        }
+        if (preempted) {
+            current.setPreempted(false);
+            if (current.isCancelRequested()) {
+                throw new CancellationException("Job " + current.getId() + " cancelled");
+            }
+        }
+        return preempted;
+    }
+}
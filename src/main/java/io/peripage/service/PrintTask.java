@@ -0,0 +1,167 @@
+package io.peripage.service;
+
+import io.peripage.domain.JobStatus;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A job submitted to a {@link PrintQueue}, with its status.
+ */
+public class PrintTask {
+
+    /**
+     * The printing work of a job.
+     */
+    @FunctionalInterface
+    public interface PrintAction {
+        void print(PrinterService printer) throws IOException, InterruptedException;
+    }
+
+    private final long id;
+    private final String description;
+    private final int priority;
+    private final String tenant;
+    private final PrintAction action;
+    private final PrintQueue queue;
+    private final Instant submittedAt = Instant.now();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Throwable error;
+    private volatile boolean cancelRequested;
+
+    PrintTask(long id, String description, int priority, String tenant, PrintAction action, PrintQueue queue) {
+        this.id = id;
+        this.description = description;
+        this.priority = priority;
+        this.tenant = tenant;
+        this.action = action;
+        this.queue = queue;
+    }
+
+    /**
+     * Move the job from queued to printing.
+     * @return false if the job is not queued anymore
+     */
+    synchronized boolean start() {
+        if (status != JobStatus.QUEUED) {
+            return false;
+        }
+        status = JobStatus.PRINTING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * Cancel the job. A queued job is removed from the queue, a job being printed stops
+     * at the next raster chunk boundary.
+     * @return false if the job is already finished
+     */
+    public synchronized boolean cancel() {
+        if (status == JobStatus.QUEUED) {
+            queue.remove(this);
+            finish(JobStatus.CANCELLED, null);
+            return true;
+        }
+        if (status.isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        return true;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    synchronized void setPreempted(boolean preempted) {
+        if (!status.isFinished()) {
+            status = preempted ? JobStatus.PREEMPTED : JobStatus.PRINTING;
+        }
+    }
+
+    void run(PrinterService printer) {
+        try {
+            action.print(printer);
+            finish(JobStatus.DONE, null);
+        } catch (CancellationException e) {
+            finish(JobStatus.CANCELLED, null);
+        } catch (InterruptedException e) {
+            // The interrupt came from the job itself, the queue worker running it keeps going
+            Thread.interrupted();
+            finish(JobStatus.CANCELLED, e);
+        } catch (Exception e) {
+            finish(JobStatus.FAILED, e);
+        }
+    }
+
+    synchronized void finish(JobStatus finalStatus, Throwable cause) {
+        error = cause;
+        finishedAt = Instant.now();
+        status = finalStatus;
+        if (finalStatus == JobStatus.CANCELLED) {
+            completion.cancel(false);
+        } else if (cause == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(cause);
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Priority of the job, higher values are printed first.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Tenant the job was submitted for. Jobs of the same priority are served in turn per tenant.
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Cause of the failure or cancellation of the job, if any.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Future completed when the job is printed, or completed exceptionally if it failed.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+}
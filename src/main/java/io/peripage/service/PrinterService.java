@@ -1,25 +1,42 @@
 package io.peripage.service;
 
-import com.google.common.primitives.Bytes;
+import io.peripage.domain.CompiledTemplate;
 import io.peripage.domain.Device;
+import io.peripage.domain.PrintJob;
+import io.peripage.domain.PrintQuality;
 import io.peripage.domain.PrinterType;
 import io.peripage.helper.ByteHelper;
 import io.peripage.helper.ImageHelper;
-import net.glxn.qrgen.QRCode;
+import io.peripage.helper.MemoryGovernor;
+import io.peripage.helper.RowBufferPool;
+import io.peripage.raster.GrayBitmap;
+import io.peripage.raster.LabelItem;
+import io.peripage.raster.LabelPacker;
+import io.peripage.raster.PackedBitmap;
+import io.peripage.raster.PackedCanvas;
+import io.peripage.raster.RasterHelper;
+import io.peripage.raster.Rotation;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static io.peripage.helper.ByteHelper.hexStringToByteArray;
 import static io.peripage.helper.ByteHelper.intToBigEndianBytes;
+import static io.peripage.helper.ByteHelper.intToLittleEndianBytes;
 
 /**
  * This class defines the Peripage interface utility.
@@ -31,11 +48,67 @@ import static io.peripage.helper.ByteHelper.intToBigEndianBytes;
 public class PrinterService {
 
     public static final int DEFAULT_SLEEP_TIMEOUT = 250;
+
+    /**
+     * Chunk height used by default, the printer buffer is about 250 rows high.
+     */
+    public static final int DEFAULT_CHUNK_ROWS = 0xff;
+
+    /**
+     * Max chunk height that can be encoded in the 2 bytes raster header.
+     */
+    public static final int MAX_CHUNK_ROWS = 0xffff;
+
+    private static final byte[] LINE_FEED = {'\n'};
+
+    /**
+     * Rotated rows produced at once by {@link #printRotated(PackedBitmap, Rotation, boolean)}.
+     */
+    private static final int ROTATION_BAND_ROWS = 64;
+
+    /**
+     * Rate increase between two blocks of {@link #calibratePacing(int, PacingProfileStore)}, and the
+     * share of the fastest delivered rate it saves.
+     */
+    private static final double CALIBRATION_STEP = 1.5;
+    private static final double CALIBRATION_MARGIN = 0.8;
+
+    /**
+     * Firmware query of `Device.getFirmware()`, and the time its answer may still come after
+     * {@link #checkDelivery(String)} gave up on it.
+     */
+    private static final String FIRMWARE_REQUEST = "10ff20f1";
+    private static final long LATE_RESPONSE_MS = 1000;
+    private static final long QUERY_RESPONSE_MS = 250;
+
     private final Device device;
     private final TransportService transportService;
     private final PrinterType printerType;
 
+    private final RowBufferPool rowBuffers;
+
+    /**
+     * Connection started by {@link #connectAsync()} and not completed yet, or null.
+     */
+    private final AtomicReference<CompletableFuture<Void>> connecting = new AtomicReference<>();
+
+    /**
+     * Held while a command is written, a whole raster chunk being a single command, so the queries of
+     * {@link StatusPoller} only go between commands.
+     */
+    private final ReentrantLock commandLock = new ReentrantLock();
+
+    /**
+     * Held from a query to the read of its answer, so no one else reads or drops it meanwhile. Taken before
+     * {@link #commandLock}, and never by print commands.
+     */
+    private final ReentrantLock responseLock = new ReentrantLock();
+
     private String printBuffer = "";
+    private int chunkRows = DEFAULT_CHUNK_ROWS;
+    private boolean largeRasterMode = false;
+    private PacingController pacing = PacingController.fixed();
+    private volatile ChunkBoundary chunkBoundary;
 
     /**
      * Create a new PeripagePrinterService instance.
@@ -45,7 +118,20 @@ public class PrinterService {
     public PrinterService(String mac, PrinterType printerType) {
         this.printerType = printerType;
         this.transportService = new TransportService(mac);
-        this.device = new Device(mac, printerType, transportService);
+        this.device = new Device(mac, printerType, new DeviceLink());
+        this.rowBuffers = new RowBufferPool(printerType.getRowBytes());
+    }
+
+    /**
+     * Create a new PeripagePrinterService instance on top of an existing transport.
+     * @param printerType Printer type
+     * @param transportService Transport used to talk to the printer
+     */
+    public PrinterService(PrinterType printerType, TransportService transportService) {
+        this.printerType = printerType;
+        this.transportService = transportService;
+        this.device = new Device(null, printerType, new DeviceLink());
+        this.rowBuffers = new RowBufferPool(printerType.getRowBytes());
     }
 
     /**
@@ -57,15 +143,202 @@ public class PrinterService {
         this.transportService.connect();
     }
 
+    /**
+     * Start connecting to the printer in the background and return at once. The print methods called
+     * meanwhile convert their job as usual and only wait for the connection before sending their first
+     * bytes, so the first job on a cold printer costs the longer of the connection and the conversion
+     * instead of their sum. If the connection fails, that first job fails with the connection error.
+     * @return the connection, completed once the printer is connected and reset. Calling this method
+     * again while connecting returns the same connection
+     */
+    public CompletableFuture<Void> connectAsync() {
+        CompletableFuture<Void> connection = new CompletableFuture<>();
+        CompletableFuture<Void> pending = connecting.compareAndExchange(null, connection);
+        if (pending != null) {
+            return pending;
+        }
+        Thread connector = new Thread(() -> {
+            try {
+                this.transportService.connect();
+                connection.complete(null);
+            } catch (Throwable e) {
+                connection.completeExceptionally(e);
+            } finally {
+                connecting.compareAndSet(connection, null);
+            }
+        }, "peripage-connect");
+        connector.setDaemon(true);
+        connector.start();
+        return connection;
+    }
+
+    /**
+     * Check if a connection started by {@link #connectAsync()} is in progress.
+     */
+    public boolean isConnecting() {
+        return connecting.get() != null;
+    }
+
+    /**
+     * Check if the printer is connected.
+     */
+    public boolean isConnected() {
+        return this.transportService.isConnected();
+    }
+
     /**
      * Disconnect from the printer.
      * @throws IOException If the printer is not found
      * @throws InterruptedException If timeout could not be completed
      */
     public void disconnect() throws IOException, InterruptedException {
+        try {
+            awaitConnection();
+        } catch (IOException e) {
+            // The printer was not connected, disconnecting the transport is harmless
+        }
         this.transportService.disconnect();
     }
 
+    /**
+     * Enable or disable the large raster mode.
+     * In large raster mode, images are sent in chunks of `PrinterType.getLargeRasterChunkRows()` rows
+     * using the full 2 bytes height field of the raster header, and the printer is reset only once per
+     * image instead of once per chunk. Images up to `0xff` rows are transmitted exactly as in the
+     * default mode.
+     * @param largeRasterMode true to enable the large raster mode
+     */
+    public void setLargeRasterMode(boolean largeRasterMode) {
+        this.largeRasterMode = largeRasterMode;
+        this.chunkRows = largeRasterMode ? printerType.getLargeRasterChunkRows() : DEFAULT_CHUNK_ROWS;
+    }
+
+    public boolean isLargeRasterMode() {
+        return largeRasterMode;
+    }
+
+    /**
+     * Override the chunk height.
+     * @param chunkRows number of rows sent under a single raster header, in range `(1, 0xffff)`
+     */
+    public void setChunkRows(int chunkRows) {
+        this.chunkRows = Math.min(MAX_CHUNK_ROWS, Math.max(1, chunkRows));
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    /**
+     * Replace the controller pacing raster rows and text lines.
+     * @param pacing The pacing controller, {@link PacingController#fixed()} by default
+     */
+    public void setPacingController(PacingController pacing) {
+        this.pacing = pacing;
+    }
+
+    public PacingController getPacingController() {
+        return pacing;
+    }
+
+    /**
+     * Measure the sustainable rows per second of the connected printer and save it for its
+     * printer type and firmware. The calibration prints blocks of `rows` blank rows (paper feed) at a
+     * constant rate, from the historical pacing up, 1.5 times faster each block, and checks the delivery
+     * of each block with {@link #checkDelivery(String)}. The fastest delivered rate, less a margin of
+     * 20% for a weaker battery or a noisier link, is saved, and an adaptive controller starting from it is
+     * kept. At most 8 blocks are printed.
+     * @param rows number of blank rows per block, a few hundreds are enough
+     * @param store The store where the measured rate is saved
+     * @return the sustainable rows per second
+     * @throws IOException If the printer did not answer, or lost rows even at the historical pacing
+     * @throws InterruptedException
+     */
+    public double calibratePacing(int rows, PacingProfileStore store) throws IOException, InterruptedException {
+        String firmware = device.getFirmware();
+        if (firmware.isEmpty()) {
+            throw new IOException("The printer did not answer the firmware query");
+        }
+
+        PacingController previous = this.pacing;
+        double delivered = 0;
+        try {
+            for (double rate = TimeUnit.SECONDS.toNanos(1) / (double) PacingController.DEFAULT_ROW_DELAY_NANOS;
+                 rate <= PacingController.MAX_ROWS_PER_SECOND; rate *= CALIBRATION_STEP) {
+                this.pacing = PacingController.constant(rate);
+                sendRaster(rows, index -> writePaddedRow(new byte[0], 0, 0), defaultResetMode());
+                if (!checkDelivery(firmware)) {
+                    break;
+                }
+                delivered = rate;
+            }
+        } finally {
+            this.pacing = previous;
+        }
+        if (delivered == 0) {
+            throw new IOException("The printer lost rows at the historical pacing");
+        }
+
+        double rowsPerSecond = delivered * CALIBRATION_MARGIN;
+        store.saveRowsPerSecond(printerType, firmware, rowsPerSecond);
+        this.pacing = PacingController.adaptive(rowsPerSecond);
+        return rowsPerSecond;
+    }
+
+    /**
+     * Check that the printer kept up with the rows sent so far. Commands are processed in order, so the
+     * printer answers a firmware query within the 250 ms of the transport only once it consumed the rows
+     * sent before, and rows it dropped or misread swallow or garble the answer. If the answer is not the
+     * expected one, the rows of a chunk are reported lost to the pacing controller, then the late answer
+     * is dropped and the printer reset.
+     * @param expectedFirmware the firmware version, as returned by `Device.getFirmware()`
+     * @return true if the printer answered the expected firmware version in time
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public boolean checkDelivery(String expectedFirmware) throws IOException, InterruptedException {
+        byte[] response = askQuery(hexStringToByteArray(FIRMWARE_REQUEST));
+        if (ByteHelper.toStringAscii(response).equals(expectedFirmware)) {
+            return true;
+        }
+
+        pacing.reportLostRows(chunkRows);
+        responseLock.lock();
+        try {
+            Thread.sleep(LATE_RESPONSE_MS);
+            commandLock.lock();
+            try {
+                this.transportService.listenPrinter();
+                this.transportService.reset();
+            } finally {
+                commandLock.unlock();
+            }
+        } finally {
+            responseLock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Use the rate saved by a previous calibration of a printer with the same type and firmware.
+     * @param store The store where calibrations are saved
+     * @return true if a calibration was found and an adaptive controller is now used
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public boolean loadPacingProfile(PacingProfileStore store) throws IOException, InterruptedException {
+        OptionalDouble rowsPerSecond = store.getRowsPerSecond(printerType, device.getFirmware());
+        if (rowsPerSecond.isPresent()) {
+            this.pacing = PacingController.adaptive(rowsPerSecond.getAsDouble());
+            return true;
+        }
+        return false;
+    }
+
+    public PrinterType getPrinterType() {
+        return printerType;
+    }
+
     /**
      * Get the device information.
      * @return The device information
@@ -83,8 +356,14 @@ public class PrinterService {
      */
     public void printBreak(int size) throws IOException {
         size = Math.min(0xff, Math.max(0x01, size));
-        byte[] request = Bytes.concat(hexStringToByteArray("1b4a"), intToBigEndianBytes(size));
-        this.transportService.tellPrinter(request);
+        byte[] request = ByteHelper.concat(hexStringToByteArray("1b4a"), intToBigEndianBytes(size));
+        awaitConnection();
+        commandLock.lock();
+        try {
+            this.transportService.tellPrinter(request);
+        } finally {
+            commandLock.unlock();
+        }
     }
 
     /**
@@ -113,7 +392,7 @@ public class PrinterService {
             for (char s : text.toCharArray()) {
                 if (s == '\n') {
                     printBreak(30);
-                    Thread.sleep(DEFAULT_SLEEP_TIMEOUT);
+                    pacing.afterLine();
                 }
             }
             return;
@@ -125,16 +404,15 @@ public class PrinterService {
 
             // Flush previous incomplete line
             if (!printBuffer.isEmpty()) {
-                this.transportService.tellPrinter(printBuffer.getBytes(StandardCharsets.US_ASCII));
-                this.transportService.tellPrinter("\n".getBytes(StandardCharsets.US_ASCII));
+                writeLine(printBuffer);
                 printBuffer = "";
-                Thread.sleep(DEFAULT_SLEEP_TIMEOUT);
+                pacing.afterLine();
             }
 
             // Flush if white-empty, because it is newline
             else if (l.isBlank()) {
                 printBreak(30);
-                Thread.sleep(DEFAULT_SLEEP_TIMEOUT);
+                pacing.afterLine();
             } else {
                 // Wrap line
                 List<String> parts = new ArrayList<>();
@@ -145,9 +423,8 @@ public class PrinterService {
                 for (String p : parts) {
                     // Print full line
                     if (p.length() == this.device.getPrinterType().getRowCharacters()) {
-                        this.transportService.tellPrinter(p.getBytes(StandardCharsets.US_ASCII));
-                        this.transportService.tellPrinter("\n".getBytes(StandardCharsets.US_ASCII));
-                        Thread.sleep(DEFAULT_SLEEP_TIMEOUT);
+                        writeLine(p);
+                        pacing.afterLine();
                     // Partial, write to buffer
                     } else {
                         printBuffer = p;
@@ -160,16 +437,56 @@ public class PrinterService {
     /**
      * This Java code takes a BufferedImage, converts it to black and white 1-bit image, resizes it to fit the printer.
      * It then extracts the byte data from the image, divides it into rows, and prints each row in the center of the paper.
+     * Images that are already black and white skip the resampling and dithering, see
+     * {@link ImageHelper#toBilevelBitmap(BufferedImage, int)}.
+     * The conversion waits for its memory to be available, see {@link MemoryGovernor#global()}.
      * @param img The image to print
      * @throws IOException If the image could not be read
+     * @throws InterruptedException If interrupted while waiting for memory
      */
     public void printPaddedImage(BufferedImage img) throws IOException, InterruptedException {
-        img = ImageHelper.convertToReversedBlackAndWhite(img, this.getRowWidth());
-        img = ImageHelper.centerPadImage(img, this.getRowWidth());
-        byte[] imgBytes = ImageHelper.getRawImageData(img);
+        byte[] imgBytes;
+        try (MemoryGovernor.Permit permit = MemoryGovernor.global().acquire(ImageHelper.estimatePeakBytes(img.getWidth(), img.getHeight(), this.getRowWidth()))) {
+            PackedBitmap bilevel = ImageHelper.toBilevelBitmap(img, this.getRowWidth());
+            if (bilevel != null) {
+                imgBytes = RasterHelper.centerPad(bilevel, this.getRowWidth()).getData();
+            } else {
+                img = ImageHelper.convertToReversedBlackAndWhite(img, this.getRowWidth());
+                img = ImageHelper.centerPadImage(img, this.getRowWidth());
+                imgBytes = ImageHelper.getRawImageData(img);
+            }
+        }
         printImageBytes(imgBytes);
     }
 
+    /**
+     * Print an image with a quality tier, see {@link #printGrayBitmap(GrayBitmap, PrintQuality)}.
+     * {@link PrintQuality#HIGH} is {@link #printPaddedImage(BufferedImage)}.
+     * @param img The image to print
+     * @param quality The quality tier
+     * @throws IOException
+     * @throws InterruptedException If interrupted while waiting for memory
+     */
+    public void printPaddedImage(BufferedImage img, PrintQuality quality) throws IOException, InterruptedException {
+        if (quality == PrintQuality.HIGH) {
+            printPaddedImage(img);
+            return;
+        }
+        PackedBitmap bitmap;
+        try (MemoryGovernor.Permit permit = MemoryGovernor.global().acquire(ImageHelper.estimatePeakBytes(img.getWidth(), img.getHeight(), this.getRowWidth()))) {
+            bitmap = RasterHelper.convertToBlackAndWhite(ImageHelper.toGrayBitmap(img), this.getRowWidth(), quality);
+        }
+        printQualityBitmap(bitmap, quality);
+    }
+
+    /**
+     * The rows of reduced tiers are sent several times rather than with a double height raster mode,
+     * which the printer is not known to support: the saving is in the conversion.
+     */
+    private void printQualityBitmap(PackedBitmap bitmap, PrintQuality quality) throws IOException, InterruptedException {
+        printBitmap(bitmap, quality.getRowReduction());
+    }
+
     /**
      * Print a QR code.
      * @param text The text to encode
@@ -177,7 +494,7 @@ public class PrinterService {
      * @throws InterruptedException
      */
     public void printQR(String text) throws IOException, InterruptedException {
-        this.printQR(text, 500);
+        this.printQR(text, ImageHelper.DEFAULT_QR_SIZE);
     }
 
     /**
@@ -188,10 +505,141 @@ public class PrinterService {
      * @throws InterruptedException
      */
     public void printQR(String text, int size) throws IOException, InterruptedException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        QRCode.from(text).withSize(size, size).writeTo(baos);
-        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        this.printPaddedImage(ImageIO.read(bais));
+        this.printBitmap(RasterHelper.qrCode(text, Math.min(size, this.getRowWidth())));
+    }
+
+    /**
+     * Print a 1-bit bitmap centered on the paper, without any conversion.
+     * Bitmaps wider than the printer row are truncated.
+     * @param bitmap The bitmap to print, 1 bits are black
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printBitmap(PackedBitmap bitmap) throws IOException, InterruptedException {
+        printBitmap(bitmap, 1);
+    }
+
+    private void printBitmap(PackedBitmap bitmap, int rowRepeat) throws IOException, InterruptedException {
+        if (bitmap.getWidth() < this.getRowWidth()) {
+            bitmap = RasterHelper.centerPad(bitmap, this.getRowWidth());
+        }
+        printRaster(ByteBuffer.wrap(bitmap.getData()), bitmap.getStride(), bitmap.getHeight(), rowRepeat);
+    }
+
+    /**
+     * Print a canvas without any conversion, each row being copied from its words to a pooled row buffer
+     * right before being sent. Canvases narrower than the printer row are centered, wider ones are truncated.
+     * @param canvas The canvas to print, 1 bits are black
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printCanvas(PackedCanvas canvas) throws IOException, InterruptedException {
+        if (canvas.getWidth() < this.getRowWidth()) {
+            printBitmap(canvas.toPackedBitmap());
+            return;
+        }
+        sendRaster(canvas.getHeight(), index -> {
+            byte[] row = rowBuffers.acquire();
+            try {
+                canvas.copyRowBytes(index, row);
+                writePaddedRow(row, 0, this.getRowBytes());
+            } finally {
+                rowBuffers.release(row);
+            }
+        }, defaultResetMode());
+    }
+
+    /**
+     * Print a 1-bit bitmap rotated, then optionally mirrored, centered on the paper. A wide banner rotated
+     * by {@link Rotation#CLOCKWISE_90} runs along the paper. The rotated rows are produced band by band
+     * while printing, see {@link RasterHelper#rotateBand(PackedBitmap, Rotation, boolean, int, int, byte[], int, int)},
+     * so a long banner is never held rotated in memory. Rotated bitmaps wider than the printer row are truncated.
+     * @param bitmap The bitmap to print, 1 bits are black
+     * @param rotation The clockwise rotation
+     * @param mirror true to mirror the rotated bitmap
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printRotated(PackedBitmap bitmap, Rotation rotation, boolean mirror) throws IOException, InterruptedException {
+        int rowBytes = this.getRowBytes();
+        int height = rotation.rotatedHeight(bitmap);
+        int byteOffset = RasterHelper.centeredByteOffset(rotation.rotatedWidth(bitmap), rowBytes);
+        byte[] band = new byte[ROTATION_BAND_ROWS * rowBytes];
+        sendRaster(height, index -> {
+            int bandRow = index % ROTATION_BAND_ROWS;
+            if (bandRow == 0) {
+                RasterHelper.rotateBand(bitmap, rotation, mirror, index, Math.min(ROTATION_BAND_ROWS, height - index),
+                        band, rowBytes, byteOffset);
+            }
+            writePaddedRow(band, bandRow * rowBytes, rowBytes);
+        }, defaultResetMode());
+    }
+
+    /**
+     * Print several small items side by side across the full printer width (N-up layout).
+     * Items are rasterized in parallel and packed in shelves, see {@link LabelPacker}.
+     * @param items The items to print
+     * @param gap blank dots between two items
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printLabels(List<LabelItem> items, int gap) throws IOException, InterruptedException {
+        printBitmap(new LabelPacker(this.getRowWidth(), gap).pack(items));
+    }
+
+    /**
+     * Print a grayscale bitmap: it is resized to fit the printer, dithered and centered on the paper,
+     * like {@link #printPaddedImage(BufferedImage)} does without relying on AWT.
+     * @param gray The bitmap to print
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printGrayBitmap(GrayBitmap gray) throws IOException, InterruptedException {
+        printBitmap(RasterHelper.convertToBlackAndWhite(gray, this.getRowWidth()));
+    }
+
+    /**
+     * Print a grayscale bitmap with a quality tier: Floyd-Steinberg for {@link PrintQuality#HIGH},
+     * ordered dithering for {@link PrintQuality#STANDARD}, a threshold on half the rows, each sent
+     * twice, for {@link PrintQuality#DRAFT}.
+     * @param gray The bitmap to print
+     * @param quality The quality tier
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printGrayBitmap(GrayBitmap gray, PrintQuality quality) throws IOException, InterruptedException {
+        printQualityBitmap(RasterHelper.convertToBlackAndWhite(gray, this.getRowWidth(), quality), quality);
+    }
+
+    /**
+     * Print a composite job as one continuous raster stream.
+     * Unlike successive calls to {@link #printPaddedImage(BufferedImage)}, {@link #printQR(String)} and
+     * {@link #printBreak(int)}, the printer is reset only once and the rows of every section are
+     * chunked continuously, so the printer head never stalls between sections.
+     * @param job The job to print, built for the printer type of this service
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printJob(PrintJob job) throws IOException, InterruptedException {
+        if (job.getPrinterType() != this.printerType) {
+            throw new IllegalArgumentException("Job built for " + job.getPrinterType() + " cannot be printed on " + this.printerType);
+        }
+        printRowBytesList(job.getRows(), ResetMode.ONCE);
+    }
+
+    /**
+     * Print a precompiled template. Only the variable fields are rendered, then patched
+     * into a copy of the precompiled rows which is sent without further conversion.
+     * @param template The template compiled for the printer type of this service
+     * @param values The value of each variable field, by field name
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printTemplate(CompiledTemplate template, Map<String, String> values) throws IOException, InterruptedException {
+        if (template.getPrinterType() != this.printerType) {
+            throw new IllegalArgumentException("Template compiled for " + template.getPrinterType() + " cannot be printed on " + this.printerType);
+        }
+        printRaster(ByteBuffer.wrap(template.render(values)), this.getRowBytes(), template.getHeight());
     }
 
     /**
@@ -216,10 +664,9 @@ public class PrinterService {
      */
     public void flushASCII() throws IOException, InterruptedException {
         if (!printBuffer.isEmpty()) {
-            this.transportService.tellPrinter(printBuffer.getBytes(StandardCharsets.US_ASCII));
-            this.transportService.tellPrinter("\n".getBytes());
+            writeLine(printBuffer);
             printBuffer = "";
-            Thread.sleep(DEFAULT_SLEEP_TIMEOUT);
+            pacing.afterLine();
         }
     }
 
@@ -242,12 +689,19 @@ public class PrinterService {
 
         byte[] paddedRowBytes = ByteHelper.padRowBytes(expectedLen, rowBytes);
 
-        this.transportService.reset();
+        awaitConnection();
+        commandLock.lock();
+        try {
+            this.transportService.reset();
 
-        byte[] request = Bytes.concat(hexStringToByteArray("1d763000"), intToBigEndianBytes(expectedLen), hexStringToByteArray("000100"), paddedRowBytes);
+            byte[] request = ByteHelper.concat(rasterHeader(expectedLen, 1), paddedRowBytes);
 
-        this.transportService.tellPrinter(request);
-        Thread.sleep(10);
+            long start = System.nanoTime();
+            this.transportService.tellPrinter(request);
+            pacing.afterRow(System.nanoTime() - start);
+        } finally {
+            commandLock.unlock();
+        }
     }
 
     /**
@@ -256,48 +710,395 @@ public class PrinterService {
      * `Printer.getRowBytes()` constant, input is truncated. If size of input
      * is under the `Printer.getRowBytes()`, it will be padded with zeros.
      *
-     * This printer supports pages up to `0xffff` rows, but current
+     * This printer supports pages up to `0xffff` rows, but by default the
      * implementation relies on chunked data with height limit of `0xff` and
-     * automatically slices the input into chunks.
+     * automatically slices the input into chunks. See {@link #setLargeRasterMode(boolean)}
+     * and {@link #setChunkRows(int)} to send larger chunks.
      *
      * Note: In case of A6+, preamble is `1d76300048000100` that can be viewed
      * as `[ 1d7630, 0030, 0001 ]`, where `1d7630` is printing operation
      * request, `0030` is big endian bytes per row, `0001` is big endian input
      * height.
      *
-     * Request: chunked `1d763000+bytes[1]:big_endian+00+bytes[1]:big_endian+00+bytes[Printer.getRowBytes()*chunk_height]`.
+     * Request: chunked `1d763000+bytes[2]:little_endian+bytes[2]:little_endian+bytes[Printer.getRowBytes()*chunk_height]`.
      *
      * @param rowBytesList list of bytes defining each row of the image. If row length does not match the `Printer.getRowBytes()`, data is truncated/padded to match the size.
      * @throws IOException
      * @throws InterruptedException
      */
     public void printRowBytesList(List<byte[]> rowBytesList) throws IOException, InterruptedException {
-        if (rowBytesList.isEmpty()) {
+        printRowBytesList(rowBytesList, defaultResetMode());
+    }
+
+    /**
+     * Send rows in chunks of {@link #getChunkRows()} rows.
+     * @param rowBytesList list of bytes defining each row of the image
+     * @param resetMode when the printer is reset
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void printRowBytesList(List<byte[]> rowBytesList, ResetMode resetMode) throws IOException, InterruptedException {
+        sendRaster(rowBytesList.size(), index -> {
+            byte[] rowBytes = rowBytesList.get(index);
+            writePaddedRow(rowBytes, 0, rowBytes.length);
+        }, resetMode);
+    }
+
+    /**
+     * Create a subscriber printing the rows pushed by a publisher as they arrive.
+     * Rows are truncated/padded to `Printer.getRowBytes()`.
+     * @param maxLatency max time a row waits for its chunk to be complete before being sent
+     * @return the subscriber, to be subscribed to a single publisher
+     */
+    public RasterSubscriber rowSubscriber(Duration maxLatency) {
+        return new RasterSubscriber(this, maxLatency);
+    }
+
+    /**
+     * Create a subscriber printing the text lines pushed by a publisher as they arrive.
+     * @return the subscriber, to be subscribed to a single publisher
+     */
+    public TextLineSubscriber lineSubscriber() {
+        return new TextLineSubscriber(this);
+    }
+
+    /**
+     * Print packed rows straight from a buffer, without copying them.
+     * Rows are read from the current position of the buffer, `stride` bytes apart,
+     * and each row slice is handed to the transport as is. Heap buffers are never copied,
+     * off-heap buffers (direct buffers or `MemorySegment.asByteBuffer()`) are staged through
+     * pooled arrays. If a row is shorter than `Printer.getRowBytes()` (stride too small or end
+     * of the buffer), it is padded with zeros; longer rows are truncated.
+     * The position of the buffer is not modified.
+     *
+     * @param raster buffer holding the packed rows, 8 pixels per byte
+     * @param stride number of bytes between the start of two consecutive rows
+     * @param height number of rows to print
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printRaster(ByteBuffer raster, int stride, int height) throws IOException, InterruptedException {
+        printRaster(raster, stride, height, 1);
+    }
+
+    /**
+     * @param rowRepeat number of times each row is sent
+     */
+    private void printRaster(ByteBuffer raster, int stride, int height, int rowRepeat) throws IOException, InterruptedException {
+        if (stride <= 0 || height < 0) {
+            throw new IllegalArgumentException("Invalid raster geometry: stride " + stride + ", height " + height);
+        }
+        int base = raster.position();
+        sendRaster(height * rowRepeat, index -> {
+            int rowStart = base + index / rowRepeat * stride;
+            writePaddedRow(raster, rowStart, Math.max(0, Math.min(stride, raster.limit() - rowStart)));
+        }, defaultResetMode());
+    }
+
+    /**
+     * Replay a print-ready file produced by {@link BatchRenderer}. The wire bytes are streamed from
+     * the memory mapped file to the transport without any conversion, paced row by row.
+     * @param file the print-ready file, built for the printer type of this service
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void printFile(PrintFile file) throws IOException, InterruptedException {
+        if (file.getPrinterType() != this.printerType) {
+            throw new IllegalArgumentException("File built for " + file.getPrinterType() + " cannot be printed on " + this.printerType);
+        }
+
+        awaitConnection();
+        ByteBuffer wire = file.getWire();
+        int rowBytes = this.getRowBytes();
+        int resetLength = TransportService.RESET_REQUEST.length() / 2;
+        int headerLength = rasterHeader(rowBytes, 0).length;
+
+        for (int chunkStart = 0; chunkStart < file.getHeight(); chunkStart += file.getChunkRows()) {
+            int chunkHeight = Math.min(file.getChunkRows(), file.getHeight() - chunkStart);
+            boolean reset = file.getResetMode() == ResetMode.EACH_CHUNK || (file.getResetMode() == ResetMode.ONCE && chunkStart == 0);
+            boolean preempted = atChunkBoundary();
+            commandLock.lock();
+            try {
+                if (preempted && !reset) {
+                    transportService.reset();
+                }
+                sendSlice(wire, (reset ? resetLength : 0) + headerLength);
+
+                for (int i = 0; i < chunkHeight; i++) {
+                    long start = System.nanoTime();
+                    sendSlice(wire, rowBytes);
+                    pacing.afterRow(System.nanoTime() - start);
+                }
+            } finally {
+                commandLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Send the next `length` bytes of a buffer and move its position after them.
+     */
+    private void sendSlice(ByteBuffer buffer, int length) throws IOException {
+        buffer.limit(buffer.position() + length);
+        this.transportService.tellPrinter(buffer);
+    }
+
+    /**
+     * Send rows in chunks of {@link #getChunkRows()} rows.
+     * @param height total number of rows
+     * @param rowWriter writes the row of the given index
+     * @param resetMode when the printer is reset
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void sendRaster(int height, RowWriter rowWriter, ResetMode resetMode) throws IOException, InterruptedException {
+        if (height == 0) {
             return;
         }
 
         int expectedLen = this.getRowBytes();
-        List<List<byte[]>> chunks = new ArrayList<>();
 
-        for (int i = 0; i < rowBytesList.size(); i += 0xff) {
-            chunks.add(rowBytesList.subList(i, Math.min(i + 0xff, rowBytesList.size())));
+        awaitConnection();
+        if (resetMode == ResetMode.ONCE) {
+            commandLock.lock();
+            try {
+                transportService.reset();
+            } finally {
+                commandLock.unlock();
+            }
         }
 
-        for (List<byte[]> chunk : chunks) {
-            transportService.reset();
+        for (int chunkStart = 0; chunkStart < height; chunkStart += chunkRows) {
+            int chunkHeight = Math.min(chunkRows, height - chunkStart);
 
-            byte[] request = Bytes.concat(hexStringToByteArray("1d763000"), intToBigEndianBytes(expectedLen), hexStringToByteArray("00"), intToBigEndianBytes(chunk.size()), hexStringToByteArray("00"));
+            boolean reset = atChunkBoundary() || resetMode == ResetMode.EACH_CHUNK;
+            commandLock.lock();
+            try {
+                if (reset) {
+                    transportService.reset();
+                }
+
+                this.transportService.tellPrinter(rasterHeader(expectedLen, chunkHeight));
 
+                for (int i = chunkStart; i < chunkStart + chunkHeight; i++) {
+                    long start = System.nanoTime();
+                    rowWriter.writeRow(i);
+                    pacing.afterRow(System.nanoTime() - start);
+                }
+            } finally {
+                commandLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait for the connection started by {@link #connectAsync()}, if any, before sending anything.
+     * @throws IOException If the connection failed
+     */
+    private void awaitConnection() throws IOException {
+        CompletableFuture<Void> pending = connecting.get();
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to the printer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Could not connect to the printer", e.getCause());
+        }
+    }
+
+    /**
+     * Write a line of text and its line feed in a single gathering write.
+     */
+    private void writeLine(String line) throws IOException {
+        awaitConnection();
+        commandLock.lock();
+        try {
+            this.transportService.tellPrinterSeq(ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII)), ByteBuffer.wrap(LINE_FEED));
+        } finally {
+            commandLock.unlock();
+        }
+    }
+
+    /**
+     * Write a row truncated/padded to `Printer.getRowBytes()`. Full rows are written in place,
+     * short rows are padded in a pooled buffer.
+     */
+    private void writePaddedRow(byte[] rowBytes, int offset, int length) throws IOException {
+        int expectedLen = this.getRowBytes();
+        if (length >= expectedLen) {
+            this.transportService.tellPrinter(rowBytes, offset, expectedLen);
+            return;
+        }
+
+        byte[] padded = rowBuffers.acquireZeroed();
+        try {
+            System.arraycopy(rowBytes, offset, padded, 0, length);
+            this.transportService.tellPrinter(padded);
+        } finally {
+            rowBuffers.release(padded);
+        }
+    }
+
+    private void writePaddedRow(ByteBuffer raster, int offset, int length) throws IOException {
+        if (raster.hasArray()) {
+            writePaddedRow(raster.array(), raster.arrayOffset() + offset, length);
+            return;
+        }
+
+        int expectedLen = this.getRowBytes();
+        byte[] row = rowBuffers.acquireZeroed();
+        try {
+            raster.get(offset, row, 0, Math.min(length, expectedLen));
+            this.transportService.tellPrinter(row);
+        } finally {
+            rowBuffers.release(row);
+        }
+    }
+
+    /**
+     * Hook called before each raster chunk, used by {@link PrintQueue} to cancel or preempt the
+     * running job at chunk boundaries.
+     */
+    @FunctionalInterface
+    interface ChunkBoundary {
+        /**
+         * @return true if the printer was used by other jobs meanwhile and must be reset
+         * @throws java.util.concurrent.CancellationException to stop the running job
+         */
+        boolean beforeChunk();
+    }
+
+    void setChunkBoundary(ChunkBoundary chunkBoundary) {
+        this.chunkBoundary = chunkBoundary;
+    }
+
+    private boolean atChunkBoundary() {
+        ChunkBoundary boundary = this.chunkBoundary;
+        return boundary != null && boundary.beforeChunk();
+    }
+
+    /**
+     * Send a status query and read its answer, only if the link is idle: connected, no other answer
+     * awaited, and no command being written or waiting to be when checked. `tryLock()` would barge ahead of
+     * a waiting print command, so the queued threads are checked first. The bytes received before are
+     * dropped, so the answer comes alone. The command lock is only held while the query is written, print
+     * commands never wait for the answer.
+     * @param request the query
+     * @return the answer, possibly empty, or null if the link was busy and nothing was sent
+     * @throws IOException If the query could not be sent
+     * @throws InterruptedException If interrupted while waiting for the answer
+     */
+    byte[] tryQuery(byte[] request) throws IOException, InterruptedException {
+        if (isConnecting() || !isConnected() || !responseLock.tryLock()) {
+            return null;
+        }
+        try {
+            if (commandLock.hasQueuedThreads() || !commandLock.tryLock()) {
+                return null;
+            }
+            long told;
+            try {
+                this.transportService.listenPrinter();
+                this.transportService.tellPrinter(request);
+                told = this.transportService.getToldBytes();
+            } finally {
+                commandLock.unlock();
+            }
+            // The query may still be queued behind raster rows, the answer is awaited once it is sent
+            this.transportService.awaitSent(told);
+            Thread.sleep(QUERY_RESPONSE_MS);
+            return this.transportService.listenPrinter();
+        } finally {
+            responseLock.unlock();
+        }
+    }
+
+    /**
+     * Send a command between the commands of the other threads.
+     */
+    private void tellCommand(byte[] request) throws IOException {
+        awaitConnection();
+        commandLock.lock();
+        try {
             this.transportService.tellPrinter(request);
+        } finally {
+            commandLock.unlock();
+        }
+    }
 
-            for (byte[] rowBytes : chunk) {
-                byte[] paddedRowBytes = ByteHelper.padRowBytes(expectedLen, rowBytes);
-                this.transportService.tellPrinter(paddedRowBytes);
-                Thread.sleep(10);
+    /**
+     * Send a query between the commands of the other threads and receive its answer, no other answer being
+     * awaited meanwhile. The bytes received before are dropped.
+     */
+    private byte[] askQuery(byte[] request) throws IOException, InterruptedException {
+        awaitConnection();
+        responseLock.lock();
+        try {
+            commandLock.lock();
+            try {
+                this.transportService.listenPrinter();
+                return this.transportService.askPrinter(request);
+            } finally {
+                commandLock.unlock();
             }
+        } finally {
+            responseLock.unlock();
         }
     }
 
+    /**
+     * Queries and settings of {@link #getDevice()}, serialized with the print commands and the status queries.
+     */
+    private class DeviceLink implements Device.Link {
+
+        @Override
+        public void tell(byte[] request) throws IOException {
+            tellCommand(request);
+        }
+
+        @Override
+        public byte[] ask(byte[] request) throws IOException, InterruptedException {
+            return askQuery(request);
+        }
+    }
+
+    /**
+     * Reset policy of the printer during a raster transmission.
+     */
+    enum ResetMode {
+        /**
+         * Reset before every chunk, historical behaviour.
+         */
+        EACH_CHUNK,
+        /**
+         * Reset once before the first chunk.
+         */
+        ONCE,
+        /**
+         * Never reset, the transmission continues a previous one.
+         */
+        NONE
+    }
+
+    private ResetMode defaultResetMode() {
+        return largeRasterMode ? ResetMode.ONCE : ResetMode.EACH_CHUNK;
+    }
+
+    /**
+     * Writes a single row of a raster to the printer.
+     */
+    @FunctionalInterface
+    private interface RowWriter {
+        void writeRow(int index) throws IOException;
+    }
+
     /**
      * Send a bytes representing single-line encoded image.
      * For example,
@@ -316,21 +1117,9 @@ public class PrinterService {
      * @throws IOException
      * @throws InterruptedException
      */
-    protected void printImageBytes(byte[] imagebytes) throws IOException, InterruptedException {
-        if (imagebytes.length == 0) {
-            return;
-        }
-
-        List<byte[]> rowChunks = new ArrayList<>();
+    public void printImageBytes(byte[] imagebytes) throws IOException, InterruptedException {
         int rowBytes = this.getRowBytes();
-
-        for (int i = 0; i < imagebytes.length; i += rowBytes) {
-            int endIndex = Math.min(i + rowBytes, imagebytes.length);
-            byte[] row = Arrays.copyOfRange(imagebytes, i, endIndex);
-            rowChunks.add(row);
-        }
-
-        printRowBytesList(rowChunks);
+        printRaster(ByteBuffer.wrap(imagebytes), rowBytes, (imagebytes.length + rowBytes - 1) / rowBytes);
     }
 
     /**
@@ -356,9 +1145,9 @@ public class PrinterService {
     protected void writeASCII(String text, boolean wait) throws IOException, InterruptedException {
         byte[] request = text.getBytes(StandardCharsets.US_ASCII);
         if (wait) {
-            this.transportService.askPrinter(request);
+            askQuery(request);
         } else {
-            this.transportService.tellPrinter(request);
+            tellCommand(request);
         }
     }
 
@@ -372,6 +1161,18 @@ public class PrinterService {
         return text.replaceAll("[^\\x00-\\x7F]", "");
     }
 
+    /**
+     * Build the raster header preceding a chunk of rows.
+     * Request: `1d763000+bytes[2]:little_endian+bytes[2]:little_endian`, where the first
+     * value is the number of bytes per row and the second one the chunk height.
+     * @param rowBytes number of bytes per row
+     * @param height number of rows in the chunk, up to `0xffff`
+     * @return the header bytes
+     */
+    static byte[] rasterHeader(int rowBytes, int height) {
+        return ByteHelper.concat(hexStringToByteArray("1d763000"), intToLittleEndianBytes(rowBytes, 2), intToLittleEndianBytes(height, 2));
+    }
+
     protected TransportService getCommunication() {
         return transportService;
     }
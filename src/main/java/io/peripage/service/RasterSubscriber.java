@@ -0,0 +1,141 @@
+package io.peripage.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints raster rows pushed by any {@link Flow.Publisher}.
+ *
+ * Rows are grouped into chunks of `PrinterService.getChunkRows()` rows. The subscriber only requests
+ * as many rows as fit in the current chunk, and requests more once a chunk has been written to the
+ * transport, so a publisher can never get ahead of the link. A partial chunk is flushed once its first
+ * row has waited for the latency bound, so slow publishers still see their rows printed promptly.
+ * The printer is reset once, before the first chunk.
+ */
+public class RasterSubscriber implements Flow.Subscriber<byte[]> {
+
+    private final PrinterService printer;
+    private final int chunkRows;
+    private final Duration maxLatency;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "peripage-raster-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<byte[]> pending = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean started;
+    private boolean done;
+
+    RasterSubscriber(PrinterService printer, Duration maxLatency) {
+        this.printer = printer;
+        this.chunkRows = printer.getChunkRows();
+        this.maxLatency = maxLatency;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        subscription.request(chunkRows);
+    }
+
+    @Override
+    public void onNext(byte[] row) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            pending.add(row);
+            if (pending.size() < chunkRows) {
+                if (pending.size() == 1) {
+                    scheduledFlush = timer.schedule(this::flushOnTimeout, maxLatency.toNanos(), TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            done = true;
+        }
+        timer.shutdownNow();
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        flush();
+        synchronized (this) {
+            done = true;
+        }
+        timer.shutdownNow();
+        completion.complete(null);
+    }
+
+    /**
+     * Future completed when the publisher completed and every row has been sent, or completed
+     * exceptionally if the publisher or the transport failed.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    private void flushOnTimeout() {
+        flush();
+    }
+
+    /**
+     * Send the pending rows as one chunk, then request as many rows as were sent.
+     */
+    private synchronized void flush() {
+        if (done || pending.isEmpty()) {
+            return;
+        }
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        List<byte[]> chunk = new ArrayList<>(pending);
+        pending.clear();
+        try {
+            printer.printRowBytesList(chunk, started ? PrinterService.ResetMode.NONE : PrinterService.ResetMode.ONCE);
+            started = true;
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+            return;
+        }
+        subscription.request(chunk.size());
+    }
+
+    private void fail(Exception e) {
+        done = true;
+        subscription.cancel();
+        timer.shutdownNow();
+        completion.completeExceptionally(e);
+    }
+}
@@ -0,0 +1,109 @@
+package io.peripage.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop driving the sockets of many printers reached through RFCOMM-to-TCP bridges, instead of a
+ * blocking transport and a thread per printer. A single thread connects, reads and writes every socket
+ * without blocking; each printer queues its outbound bytes in its {@link MultiplexedTransportService}.
+ * A busy fleet can be split over a few multiplexers, one thread each.
+ *
+ * Usage: `new PrinterService(PrinterType.A6p, multiplexer.transport(new InetSocketAddress("bridge", 5000)))`.
+ */
+public class SocketMultiplexer implements AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final Selector selector;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Thread loop;
+
+    private volatile boolean closed;
+
+    /**
+     * Open the selector and start the event loop thread.
+     * @throws IOException If the selector could not be opened
+     */
+    public SocketMultiplexer() throws IOException {
+        selector = Selector.open();
+        loop = new Thread(this::run, "peripage-selector");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Create the transport of a printer. It is connected by {@link PrinterService#connect()}.
+     * @param address the address of the socket forwarding the bytes to the printer
+     * @return the transport
+     */
+    public MultiplexedTransportService transport(InetSocketAddress address) {
+        return new MultiplexedTransportService(this, address);
+    }
+
+    /**
+     * Stop the event loop and close every socket.
+     * @throws InterruptedException If interrupted while waiting for the loop to stop
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        selector.wakeup();
+        loop.join();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Run a task on the event loop thread, the only one allowed to register channels.
+     */
+    void execute(Runnable task) {
+        pending.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Make the event loop take changed interest sets into account.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Runnable task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    ((MultiplexedTransportService) key.attachment()).handle(key, readBuffer);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Socket multiplexer stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((MultiplexedTransportService) key.attachment()).fail(new IOException("Socket multiplexer closed"));
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Could not close selector: " + e.getMessage());
+            }
+        }
+    }
+}
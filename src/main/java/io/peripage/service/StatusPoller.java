@@ -0,0 +1,204 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterStatus;
+import io.peripage.helper.ByteHelper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Background monitor of a printer, keeping its connection state, name and battery level up to date without
+ * ever delaying print traffic. Asking the printer with {@link io.peripage.domain.Device#getBattery()} blocks
+ * the link for 250 ms; the poller instead sends its queries only while no command is being written or
+ * waiting to be, between jobs or between raster chunks, and reads the answers without holding the link.
+ * Answers that do not look like the one asked, mixed with other traffic, are dropped.
+ *
+ * The latest state is published as an immutable {@link PrinterStatus}: {@link #getStatus()} never blocks,
+ * and listeners are called on the poller thread whenever the state changes.
+ *
+ * The queries count as activity for the auto power-off timeout of the printer, so a polled printer never
+ * powers off by itself.
+ */
+public class StatusPoller implements AutoCloseable {
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * Request: `10ff50f1`, see {@link io.peripage.domain.Device#getBattery()}.
+     */
+    private static final byte[] BATTERY_REQUEST = ByteHelper.hexStringToByteArray("10ff50f1");
+    /**
+     * Request: `10ff3011`, see {@link io.peripage.domain.Device#getName()}.
+     */
+    private static final byte[] NAME_REQUEST = ByteHelper.hexStringToByteArray("10ff3011");
+
+    private static final long IDLE_RETRY_MS = 100;
+    private static final long CONNECTION_CHECK_MS = 1000;
+
+    private final PrinterService printer;
+    private final long intervalNanos;
+    private final Thread thread;
+    private final AtomicReference<PrinterStatus> status = new AtomicReference<>(PrinterStatus.UNKNOWN);
+    private final List<Consumer<PrinterStatus>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed;
+    /**
+     * True once the name was asked on the current connection, only used by the poller thread.
+     */
+    private boolean nameAsked;
+
+    /**
+     * Start polling a printer every {@link #DEFAULT_INTERVAL}.
+     * @param name name of the printer, used to name the poller thread
+     * @param printer the printer, connected or not
+     */
+    public StatusPoller(String name, PrinterService printer) {
+        this(name, printer, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Start polling a printer.
+     * @param name name of the printer, used to name the poller thread
+     * @param printer the printer, connected or not
+     * @param interval time between two battery queries, the connection state being checked every second
+     */
+    public StatusPoller(String name, PrinterService printer, Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        this.printer = printer;
+        this.intervalNanos = interval.toNanos();
+        this.thread = new Thread(this::work, "peripage-status-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Latest known state of the printer, without blocking.
+     */
+    public PrinterStatus getStatus() {
+        return status.get();
+    }
+
+    /**
+     * Be notified of every change of the state, on the poller thread.
+     * @param listener called with the new state
+     */
+    public void addListener(Consumer<PrinterStatus> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<PrinterStatus> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop polling, an answer being awaited is dropped.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        thread.interrupt();
+        thread.join();
+    }
+
+    private void work() {
+        long now = System.nanoTime();
+        long nextCheck = now;
+        long nextQuery = now;
+        try {
+            while (!closed) {
+                now = System.nanoTime();
+                if (now - nextCheck >= 0) {
+                    checkConnection();
+                    nextCheck = now + TimeUnit.MILLISECONDS.toNanos(CONNECTION_CHECK_MS);
+                }
+                // A round interrupted by print traffic is resumed in the next idle gap
+                if (status.get().isConnected() && now - nextQuery >= 0 && queryRound()) {
+                    nextQuery = now + intervalNanos;
+                }
+                Thread.sleep(IDLE_RETRY_MS);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void checkConnection() {
+        boolean connected = !printer.isConnecting() && printer.isConnected();
+        if (!connected) {
+            nameAsked = false;
+        }
+        publish(status.get().withConnected(connected));
+    }
+
+    /**
+     * Ask the name, once per connection, then the battery level.
+     * @return false if the link was busy and the round must be resumed later
+     */
+    private boolean queryRound() throws InterruptedException {
+        try {
+            if (!nameAsked) {
+                byte[] response = printer.tryQuery(NAME_REQUEST);
+                if (response == null) {
+                    return false;
+                }
+                int length = nameLength(response);
+                if (length > 0) {
+                    publish(status.get().withName(ByteHelper.toStringAscii(Arrays.copyOf(response, length))));
+                }
+                nameAsked = true;
+            }
+
+            byte[] response = printer.tryQuery(BATTERY_REQUEST);
+            if (response == null) {
+                return false;
+            }
+            // Response: `bytes[2] = { 0, percentage }`, anything else was mixed with other traffic
+            if (response.length == 2 && response[0] == 0 && response[1] >= 0 && response[1] <= 100) {
+                publish(status.get().withBattery(response[1]));
+            }
+        } catch (IOException e) {
+            checkConnection();
+        }
+        return true;
+    }
+
+    /**
+     * Response: `bytes` with `device_name+two_bytes_of_mac`, like `PeriPage+DF7A`, possibly followed by
+     * control characters.
+     * @return the length of the name, or 0 if the response is not made of printable ASCII characters
+     */
+    private static int nameLength(byte[] response) {
+        int length = response.length;
+        while (length > 0 && (response[length - 1] & 0xff) <= 0x20) {
+            length--;
+        }
+        for (int i = 0; i < length; i++) {
+            if (response[i] < 0x20 || response[i] > 0x7e) {
+                return 0;
+            }
+        }
+        return length;
+    }
+
+    private void publish(PrinterStatus next) {
+        PrinterStatus previous = status.getAndSet(next);
+        if (previous.equals(next)) {
+            return;
+        }
+        for (Consumer<PrinterStatus> listener : listeners) {
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                System.err.println("Printer status listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
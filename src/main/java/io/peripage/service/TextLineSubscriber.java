@@ -0,0 +1,75 @@
+package io.peripage.service;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Prints text lines pushed by any {@link Flow.Publisher} with `PrinterService.printlnASCII`.
+ * One line is requested at a time, after the previous one has been sent to the printer.
+ */
+public class TextLineSubscriber implements Flow.Subscriber<String> {
+
+    private final PrinterService printer;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+
+    TextLineSubscriber(PrinterService printer) {
+        this.printer = printer;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (completion.isDone()) {
+            return;
+        }
+        try {
+            printer.printlnASCII(line);
+        } catch (IOException | RuntimeException e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            printer.flushASCII();
+            completion.complete(null);
+        } catch (IOException e) {
+            completion.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            completion.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Future completed when the publisher completed and every line has been sent.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+}
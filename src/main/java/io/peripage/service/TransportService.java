@@ -1,17 +1,22 @@
 package io.peripage.service;
 
 import io.peripage.helper.ByteHelper;
+import io.peripage.helper.RowBufferPool;
 
 import javax.microedition.io.Connector;
 import javax.microedition.io.StreamConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class TransportService {
 
     private static final int WAIT_BETWEEN_REQUEST_AND_RESPONSE_MS = 250;
+    private static final int STAGING_BUFFER_SIZE = 4096;
+
+    static final String RESET_REQUEST = "10fffe01000000000000000000000000";
 
     private final String mac;
 
@@ -19,10 +24,19 @@ public class TransportService {
     private OutputStream os;
     private InputStream is;
 
+    private final RowBufferPool stagingBuffers = new RowBufferPool(STAGING_BUFFER_SIZE, 2);
+
     public TransportService(String mac) {
         this.mac = mac.replaceAll(":", "");
     }
 
+    /**
+     * For transports that do not connect through BlueCove, see {@link ChannelTransportService}.
+     */
+    protected TransportService() {
+        this.mac = null;
+    }
+
     /**
      * Open a new connection to the printer without checking for existing
      * connection. In case of malfunction and/or twice connecting to the same
@@ -82,7 +96,7 @@ public class TransportService {
      * @throws IOException
      */
     public void reset() throws IOException {
-        tellPrinterFromHex("10fffe01000000000000000000000000");
+        tellPrinterFromHex(RESET_REQUEST);
     }
 
     /**
@@ -91,18 +105,87 @@ public class TransportService {
      * @throws IOException
      */
     public void tellPrinter(byte[] byteseq) throws IOException {
-        os.write(byteseq);
+        tellPrinter(byteseq, 0, byteseq.length);
+    }
+
+    /**
+     * Send a slice of a byte array to the printer without response and without copying it.
+     * @param byteseq bytes data
+     * @param offset index of the first byte to send
+     * @param length number of bytes to send
+     * @throws IOException
+     */
+    public void tellPrinter(byte[] byteseq, int offset, int length) throws IOException {
+        os.write(byteseq, offset, length);
         os.flush();
     }
 
+    /**
+     * Send the remaining bytes of a buffer to the printer without response.
+     * Heap buffers are written in place. Off-heap buffers are staged through a small
+     * pooled array because the underlying stream only accepts arrays.
+     * The position of the buffer is moved to its limit.
+     * @param buffer bytes data
+     * @throws IOException
+     */
+    public void tellPrinter(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            tellPrinter(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        byte[] staging = stagingBuffers.acquire();
+        try {
+            while (buffer.hasRemaining()) {
+                int length = Math.min(staging.length, buffer.remaining());
+                buffer.get(staging, 0, length);
+                tellPrinter(staging, 0, length);
+            }
+        } finally {
+            stagingBuffers.release(staging);
+        }
+    }
+
+    /**
+     * Send the remaining bytes of several buffers to the printer without response, one after
+     * the other. Transports supporting it send them in a single gathering write.
+     * The positions of the buffers are moved to their limits.
+     * @param buffers bytes data
+     * @throws IOException
+     */
+    public void tellPrinterSeq(ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            tellPrinter(buffer);
+        }
+    }
+
     /**
      * Send bytes to the printer without response.
      * @param hexData bytes data
      * @throws IOException
      */
     public void tellPrinterFromHex(String hexData) throws IOException {
-        os.write(ByteHelper.hexStringToByteArray(hexData));
-        os.flush();
+        tellPrinter(ByteHelper.hexStringToByteArray(hexData));
+    }
+
+    /**
+     * Count of the bytes told to the printer so far, to wait for with {@link #awaitSent(long)}. The blocking
+     * transports have written the bytes when `tellPrinter` returns, and do not count them.
+     * @return the count, in the order the bytes are sent
+     */
+    public long getToldBytes() {
+        return 0;
+    }
+
+    /**
+     * Wait until the bytes told to the printer up to a count returned by {@link #getToldBytes()} left for the
+     * printer, so a response deadline does not include the time they waited in a queue.
+     * @param toldBytes the count to wait for
+     * @throws IOException If the transport failed meanwhile
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitSent(long toldBytes) throws IOException, InterruptedException {
     }
 
     /**
@@ -0,0 +1,66 @@
+package io.peripage.daemon;
+
+import io.peripage.domain.PrinterType;
+import io.peripage.service.PrintQueue;
+import io.peripage.service.PrintTask;
+import io.peripage.service.PrinterService;
+import io.peripage.service.TransportService;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EscPosBridgeTest {
+
+    // An idle connection kept open ends its job, so the next jobs of the printer print
+    @Test
+    public void test_idle_connection_releases_printer() throws Exception {
+        // Given: a client sending a one row image then keeping its connection open
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        TransportService transport = new TransportService("00:00:00:00:00:00") {
+            @Override
+            public void connect() {
+            }
+
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+                sent.write(byteseq, offset, length);
+            }
+        };
+        try (PrintQueue queue = new PrintQueue("test", new PrinterService(PrinterType.A6, transport));
+             EscPosBridge bridge = new EscPosBridge(queue)) {
+            bridge.setIdleTimeout(Duration.ofMillis(200));
+            bridge.start(0);
+            try (Socket client = new Socket(InetAddress.getLoopbackAddress(), bridge.getPort())) {
+                OutputStream output = client.getOutputStream();
+                output.write(hexStringToByteArray("1d76300001000100ff"));
+                output.flush();
+                Thread.sleep(100);
+
+                // When
+                PrintTask next = queue.submit("next", printer -> printer.printBreak(10));
+
+                // Then
+                next.getCompletion().get(2, TimeUnit.SECONDS);
+                // The reset request, the raster header and the row of the first job, the feed of the next one
+                assertEquals(16 + 8 + 48 + 3, sent.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.peripage.daemon;
+
+import io.peripage.domain.PrinterType;
+import io.peripage.service.PacingController;
+import io.peripage.service.PrinterService;
+import io.peripage.service.TransportService;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrintDaemonTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern STATUS = Pattern.compile("\"status\":\"(\\w+)\"");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    // Jobs are submitted, followed and cancelled, queued or running
+    @Test
+    public void test_submit_follow_and_cancel_jobs() throws Exception {
+        // Given: a printer blocked in its first job until released
+        CountDownLatch release = new CountDownLatch(1);
+        try (PrintDaemon daemon = startDaemon(release)) {
+            HttpResponse<String> running = send(daemon, "POST", "/printers/office/jobs?type=raster", new byte[40 * 48]);
+            assertEquals(202, running.statusCode());
+            String runningId = match(ID, running.body());
+            while (!"PRINTING".equals(match(STATUS, send(daemon, "GET", "/jobs/" + runningId, null).body()))) {
+                Thread.sleep(10);
+            }
+            HttpResponse<String> queued = send(daemon, "POST", "/printers/office/jobs?type=text", "hello".getBytes());
+            assertEquals(202, queued.statusCode());
+            assertEquals("QUEUED", match(STATUS, queued.body()));
+
+            // When
+            HttpResponse<String> cancelQueued = send(daemon, "DELETE", "/jobs/" + match(ID, queued.body()), null);
+            HttpResponse<String> cancelRunning = send(daemon, "DELETE", "/jobs/" + runningId, null);
+            release.countDown();
+            String status;
+            while ("PRINTING".equals(status = match(STATUS, send(daemon, "GET", "/jobs/" + runningId, null).body()))) {
+                Thread.sleep(10);
+            }
+
+            // Then
+            assertEquals(200, cancelQueued.statusCode());
+            assertEquals("CANCELLED", match(STATUS, cancelQueued.body()));
+            assertEquals(200, cancelRunning.statusCode());
+            assertEquals("CANCELLED", status);
+            assertEquals(409, send(daemon, "DELETE", "/jobs/" + runningId, null).statusCode());
+        }
+    }
+
+    // Invalid requests are answered with an error and nothing is queued
+    @Test
+    public void test_invalid_requests() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(0);
+        try (PrintDaemon daemon = startDaemon(release)) {
+            // When
+            HttpResponse<String> unknownType = send(daemon, "POST", "/printers/office/jobs?type=pdf", new byte[1]);
+
+            // Then
+            assertEquals(400, unknownType.statusCode());
+            assertTrue(unknownType.body().contains("\"error\":\"Unknown job type pdf\""));
+            assertEquals(400, send(daemon, "POST", "/printers/office/jobs?type=text&quality=best", new byte[1]).statusCode());
+            assertEquals(400, send(daemon, "POST", "/printers/office/jobs?type=text&priority=high", new byte[1]).statusCode());
+            assertEquals(404, send(daemon, "POST", "/printers/lobby/jobs?type=text", new byte[1]).statusCode());
+            assertEquals(404, send(daemon, "GET", "/jobs/999", null).statusCode());
+            assertEquals(404, send(daemon, "GET", "/jobs/abc", null).statusCode());
+            assertTrue(send(daemon, "GET", "/printers", null).body().contains("\"queueDepth\":0"));
+        }
+    }
+
+    /**
+     * Start a daemon on a free port with an A6 printer whose raster writes wait for a latch. Status queries,
+     * 4 bytes long, are never blocked.
+     */
+    private static PrintDaemon startDaemon(CountDownLatch release) throws Exception {
+        TransportService transport = new TransportService("00:00:00:00:00:00") {
+            @Override
+            public void connect() {
+            }
+
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public void tellPrinter(byte[] byteseq, int offset, int length) {
+                try {
+                    if (length != 4) {
+                        release.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public byte[] listenPrinter() {
+                return new byte[0];
+            }
+        };
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        printer.setChunkRows(10);
+        printer.setPacingController(PacingController.constant(PacingController.MAX_ROWS_PER_SECOND));
+        PrintDaemon daemon = new PrintDaemon();
+        daemon.addPrinter("office", printer);
+        daemon.start(0);
+        return daemon;
+    }
+
+    private HttpResponse<String> send(PrintDaemon daemon, String method, String path, byte[] body) throws Exception {
+        String[] pathQuery = path.split("\\?", 2);
+        URI uri = new URI("http", null, InetAddress.getLoopbackAddress().getHostAddress(), daemon.getPort(),
+                pathQuery[0], pathQuery.length == 2 ? pathQuery[1] : null, null);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String match(Pattern pattern, String json) {
+        Matcher matcher = pattern.matcher(json);
+        assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+}
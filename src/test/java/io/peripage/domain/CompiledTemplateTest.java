@@ -0,0 +1,107 @@
+package io.peripage.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class CompiledTemplateTest {
+
+    private static final int WIDTH = 384;
+    private static final int HEIGHT = 40;
+
+    /**
+     * Field drawn as a black bar of 6 pixels per character, clipped by the field size.
+     */
+    private static final TemplateField.Renderer BAR = (value, w, h) -> {
+        BufferedImage img = whiteImage(w, h);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, value.length() * 6, h / 2);
+        g2d.dispose();
+        return img;
+    };
+
+    private static final TemplateField FIELD = new TemplateField("total", 13, 10, 50, 16, BAR);
+
+    private static BufferedImage whiteImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return img;
+    }
+
+    /**
+     * Layout with a border and a diagonal going through the field area.
+     */
+    private static BufferedImage layout() {
+        BufferedImage img = whiteImage(WIDTH, HEIGHT);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(0, 0, WIDTH - 1, HEIGHT - 1);
+        g2d.drawLine(0, 0, 100, HEIGHT - 1);
+        g2d.dispose();
+        return img;
+    }
+
+    /**
+     * Convert the whole receipt, the field drawn over the layout, without any precompiled row.
+     */
+    private static byte[] fullConversion(String value) throws Exception {
+        BufferedImage img = layout();
+        Graphics2D g2d = img.createGraphics();
+        g2d.drawImage(BAR.render(value, FIELD.getWidth(), FIELD.getHeight()), FIELD.getX(), FIELD.getY(), null);
+        g2d.dispose();
+        return new ReceiptTemplate(img, List.of()).compile(PrinterType.A6).render(Map.of());
+    }
+
+    // Rendering without value returns the static rows of the layout
+    @Test
+    public void test_render_without_value_keeps_layout() throws Exception {
+        // Given
+        CompiledTemplate template = new ReceiptTemplate(layout(), List.of(FIELD)).compile(PrinterType.A6);
+
+        // When
+        byte[] raster = template.render(Map.of());
+
+        // Then
+        assertArrayEquals(new ReceiptTemplate(layout(), List.of()).compile(PrinterType.A6).render(Map.of()), raster);
+    }
+
+    // A field patched at an unaligned bit offset matches the conversion of the whole receipt
+    @Test
+    public void test_render_matches_full_conversion() throws Exception {
+        // Given
+        CompiledTemplate template = new ReceiptTemplate(layout(), List.of(FIELD)).compile(PrinterType.A6);
+
+        // When
+        byte[] raster = template.render(Map.of("total", "42.00"));
+
+        // Then
+        assertArrayEquals(fullConversion("42.00"), raster);
+    }
+
+    // A value too long for the field is clipped, and a shorter value rendered next clears it
+    @Test
+    public void test_render_clips_and_clears_previous_value() throws Exception {
+        // Given
+        CompiledTemplate template = new ReceiptTemplate(layout(), List.of(FIELD)).compile(PrinterType.A6);
+
+        // When
+        byte[] longer = template.render(Map.of("total", "1234567890.00"));
+        byte[] shorter = template.render(Map.of("total", "1"));
+        byte[] again = template.render(Map.of("total", "1234567890.00"));
+
+        // Then
+        assertArrayEquals(fullConversion("1234567890.00"), longer);
+        assertArrayEquals(fullConversion("1"), shorter);
+        assertArrayEquals(longer, again);
+    }
+}
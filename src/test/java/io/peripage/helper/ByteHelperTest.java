@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -60,4 +61,32 @@ public class ByteHelperTest {
         });
     }
 
+    // Copies a rectangle of bits at an unaligned position, overwriting the destination
+    @Test
+    public void test_copy_bits_unaligned() {
+        // Given
+        byte[] src = {(byte) 0b11110000};
+        byte[] dst = {(byte) 0xff, (byte) 0xff, 0, 0};
+
+        // When
+        ByteHelper.copyBits(src, 1, 6, 1, dst, 2, 5, 0);
+
+        // Then
+        assertArrayEquals(new byte[]{(byte) 0b11111111, (byte) 0b10011111, 0, 0}, dst);
+    }
+
+    // Clips the pixels falling outside the destination
+    @Test
+    public void test_copy_bits_clipped() {
+        // Given
+        byte[] src = {(byte) 0xff, (byte) 0xff};
+        byte[] dst = new byte[2];
+
+        // When
+        ByteHelper.copyBits(src, 1, 8, 2, dst, 1, 4, 1);
+
+        // Then
+        assertArrayEquals(new byte[]{0, (byte) 0x0f}, dst);
+    }
+
 }
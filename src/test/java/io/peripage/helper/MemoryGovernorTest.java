@@ -0,0 +1,96 @@
+package io.peripage.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryGovernorTest {
+
+    // Conversions are admitted while they fit in the budget
+    @Test
+    public void test_conversions_admitted_within_budget() throws InterruptedException {
+        // Given
+        MemoryGovernor governor = new MemoryGovernor(100);
+
+        // When
+        MemoryGovernor.Permit first = governor.acquire(60);
+        MemoryGovernor.Permit second = governor.tryAcquire(60);
+
+        // Then
+        assertNull(second);
+        assertEquals(60, governor.getUsedBytes());
+        first.close();
+        assertNotNull(governor.tryAcquire(60));
+    }
+
+    // A conversion larger than the budget waits until nothing else runs
+    @Test
+    public void test_oversized_conversion_admitted_alone() throws InterruptedException {
+        // Given
+        MemoryGovernor governor = new MemoryGovernor(100);
+        MemoryGovernor.Permit small = governor.acquire(10);
+        Thread large = new Thread(() -> governor.acquireUninterruptibly(500).close());
+
+        // When
+        large.start();
+        while (governor.getWaitingCount() == 0) {
+            Thread.sleep(10);
+        }
+        small.close();
+        large.join();
+
+        // Then
+        assertEquals(0, governor.getUsedBytes());
+        assertEquals(500, governor.getPeakBytes());
+    }
+
+    // An interrupted uninterruptible wait keeps its place in line
+    @Test
+    public void test_interrupt_keeps_place_in_line() throws InterruptedException {
+        // Given: a full budget, then a conversion waiting uninterruptibly and another one behind it
+        MemoryGovernor governor = new MemoryGovernor(100);
+        MemoryGovernor.Permit running = governor.acquire(100);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean interruptKept = new AtomicBoolean();
+        Thread first = new Thread(() -> {
+            try (MemoryGovernor.Permit permit = governor.acquireUninterruptibly(60)) {
+                admitted.add("first");
+                interruptKept.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        Thread second = new Thread(() -> {
+            try (MemoryGovernor.Permit permit = governor.acquire(60)) {
+                admitted.add("second");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        first.start();
+        while (governor.getWaitingCount() < 1) {
+            Thread.sleep(10);
+        }
+        second.start();
+        while (governor.getWaitingCount() < 2) {
+            Thread.sleep(10);
+        }
+
+        // When
+        first.interrupt();
+        Thread.sleep(50);
+        running.close();
+        first.join();
+        second.join();
+
+        // Then
+        assertEquals(List.of("first", "second"), admitted);
+        assertTrue(interruptKept.get());
+    }
+}
@@ -0,0 +1,57 @@
+package io.peripage.raster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LabelPackerTest {
+
+    private static PackedBitmap black(int width, int height) {
+        PackedBitmap bitmap = new PackedBitmap(width, height);
+        Arrays.fill(bitmap.getData(), (byte) 0xff);
+        return bitmap;
+    }
+
+    // Places items side by side and opens a new shelf when the row is full
+    @Test
+    public void test_packs_items_on_shelves() throws Exception {
+        // Given
+        LabelPacker packer = new LabelPacker(384, 8);
+        List<LabelItem> items = List.of(LabelItem.of(black(120, 50)), LabelItem.of(black(120, 50)),
+                LabelItem.of(black(120, 50)), LabelItem.of(black(120, 40)));
+
+        // When
+        PackedBitmap packed = packer.pack(items);
+
+        // Then
+        assertEquals(384, packed.getWidth());
+        assertEquals(50 + 8 + 40, packed.getHeight());
+        assertTrue(packed.get(0, 0));
+        assertFalse(packed.get(124, 0));
+        assertTrue(packed.get(128, 0));
+        assertTrue(packed.get(256 + 119, 49));
+        assertTrue(packed.get(0, 58));
+        assertFalse(packed.get(130, 58));
+    }
+
+    // Taller items are placed first
+    @Test
+    public void test_shelf_height_is_tallest_item() {
+        // Given
+        LabelPacker packer = new LabelPacker(384, 0);
+
+        // When
+        PackedBitmap packed = packer.packBitmaps(List.of(black(100, 10), black(100, 30)));
+
+        // Then
+        assertEquals(30, packed.getHeight());
+        assertTrue(packed.get(0, 29));
+        assertTrue(packed.get(100, 9));
+        assertFalse(packed.get(100, 10));
+    }
+}
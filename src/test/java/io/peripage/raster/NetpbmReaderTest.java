@@ -0,0 +1,120 @@
+package io.peripage.raster;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetpbmReaderTest {
+
+    private static ByteArrayInputStream ascii(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Reads a plain PBM image with comments
+    @Test
+    public void test_reads_plain_pbm() throws IOException {
+        // Given
+        ByteArrayInputStream in = ascii("P1\n# comment\n3 2\n1 0 1\n0 1 0\n");
+
+        // When
+        PackedBitmap bitmap = NetpbmReader.readBitmap(in);
+
+        // Then
+        assertEquals(3, bitmap.getWidth());
+        assertEquals(2, bitmap.getHeight());
+        assertArrayEquals(new byte[]{(byte) 0b10100000, (byte) 0b01000000}, bitmap.getData());
+    }
+
+    // Reads raw PBM rows as is
+    @Test
+    public void test_reads_raw_pbm() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("P4 10 1\n".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(new byte[]{(byte) 0xf0, (byte) 0xc0});
+
+        // When
+        PackedBitmap bitmap = NetpbmReader.readBitmap(new ByteArrayInputStream(out.toByteArray()));
+
+        // Then
+        assertTrue(bitmap.get(0, 0));
+        assertFalse(bitmap.get(4, 0));
+        assertTrue(bitmap.get(9, 0));
+    }
+
+    // Reads a raw PGM image and normalizes levels
+    @Test
+    public void test_reads_raw_pgm() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("P5\n2 1\n15\n".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(new byte[]{0, 15});
+
+        // When
+        GrayBitmap gray = NetpbmReader.readGray(new ByteArrayInputStream(out.toByteArray()));
+
+        // Then
+        assertEquals(0, gray.get(0, 0));
+        assertEquals(255, gray.get(1, 0));
+    }
+
+    // A plain image may end with a 0 sample right before the end of file, but not before its last sample
+    @Test
+    public void test_plain_pgm_ending_with_zero() throws IOException {
+        // Given
+        ByteArrayInputStream in = ascii("P2 2 1 255 255 0");
+
+        // When
+        GrayBitmap gray = NetpbmReader.readGray(in);
+
+        // Then
+        assertEquals(255, gray.get(0, 0));
+        assertEquals(0, gray.get(1, 0));
+        assertThrows(EOFException.class, () -> NetpbmReader.readGray(ascii("P2 2 1 255 255")));
+    }
+
+    // Rejects a grayscale image when a bitmap is expected
+    @Test
+    public void test_rejects_pgm_as_bitmap() {
+        // Given
+        ByteArrayInputStream in = ascii("P2 1 1 255 0");
+
+        // When
+        assertThrows(IOException.class, () -> NetpbmReader.readBitmap(in));
+    }
+
+    // Rejects headers whose pixel count would wrap around or exhaust the memory
+    @Test
+    public void test_rejects_huge_headers() {
+        // Given
+        String[] headers = {"P5 65536 65536 255\n", "P5 50000 50000 255\n", "P4 65536 65536\n", "P5 4294967297 1 255\n"};
+
+        for (String header : headers) {
+            // When
+            IOException e = assertThrows(IOException.class, () -> NetpbmReader.readGray(ascii(header)));
+
+            // Then
+            assertFalse(e instanceof EOFException);
+        }
+    }
+
+    // Rejects a header cut before its last value
+    @Test
+    public void test_rejects_truncated_header() {
+        // Given
+        ByteArrayInputStream in = ascii("P5 10 ");
+
+        // When
+        assertThrows(EOFException.class, () -> NetpbmReader.readGray(in));
+    }
+}
@@ -0,0 +1,62 @@
+package io.peripage.raster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackedCanvasTest {
+
+    // Unaligned blits combine every pixel like the per-pixel operation would
+    @Test
+    public void test_unaligned_blit_matches_pixels() {
+        // Given: a random 150x20 canvas and a canvas with a black rectangle
+        Random random = new Random(7);
+        PackedCanvas source = new PackedCanvas(150, 20);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 150; x++) {
+                source.set(x, y, random.nextBoolean());
+            }
+        }
+        PackedCanvas canvas = new PackedCanvas(200, 30);
+        canvas.fillRect(10, 5, 100, 10);
+
+        // When
+        canvas.blit(source, 3, 2, 120, 15, 37, 4, PackedCanvas.Op.XOR);
+
+        // Then
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 200; x++) {
+                boolean rect = x >= 10 && x < 110 && y >= 5 && y < 15;
+                boolean blitted = x >= 37 && x < 157 && y >= 4 && y < 19 && source.get(x - 37 + 3, y - 4 + 2);
+                assertEquals(rect ^ blitted, canvas.get(x, y));
+            }
+        }
+    }
+
+    // Drawing is clipped and rows convert to the wire bytes
+    @Test
+    public void test_clip_and_row_bytes() {
+        // Given
+        PackedCanvas canvas = new PackedCanvas(384, 4);
+        canvas.setClip(8, 0, 8, 4);
+
+        // When
+        canvas.horizontalLine(0, 1, 384, 1);
+        canvas.resetClip();
+        canvas.verticalLine(383, 0, 4, 1);
+        byte[] row = new byte[48];
+        canvas.copyRowBytes(1, row);
+
+        // Then
+        assertEquals((byte) 0, row[0]);
+        assertEquals((byte) 0xff, row[1]);
+        assertEquals((byte) 0, row[2]);
+        assertEquals((byte) 0x01, row[47]);
+        assertTrue(canvas.toPackedBitmap().get(383, 3));
+        assertFalse(canvas.toPackedBitmap().get(382, 3));
+    }
+}
@@ -0,0 +1,124 @@
+package io.peripage.raster;
+
+import io.peripage.domain.PrintQuality;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RasterHelperTest {
+
+    // Black and white images are thresholded without dithering
+    @Test
+    public void test_bilevel_image_is_thresholded() {
+        // Given
+        GrayBitmap gray = new GrayBitmap(16, 16);
+        for (int y = 0; y < 16; y++) {
+            gray.set(y, y, 0);
+        }
+        gray.set(3, 0, 128);
+
+        // When
+        PackedBitmap bitmap = RasterHelper.toBilevel(gray);
+
+        // Then
+        assertNotNull(bitmap);
+        assertTrue(bitmap.get(5, 5));
+        assertFalse(bitmap.get(6, 5));
+    }
+
+    // Photos are rejected by the bilevel detection
+    @Test
+    public void test_photo_is_not_bilevel() {
+        // Given
+        GrayBitmap gray = new GrayBitmap(32, 32);
+        Random random = new Random(42);
+        for (int i = 0; i < gray.getPixels().length; i++) {
+            gray.getPixels()[i] = (byte) random.nextInt(256);
+        }
+
+        // When
+        PackedBitmap bitmap = RasterHelper.toBilevel(gray);
+
+        // Then
+        assertNull(bitmap);
+    }
+
+    // Nearest-neighbor downscaling keeps hard edges
+    @Test
+    public void test_scale_nearest_halves_bitmap() {
+        // Given
+        PackedBitmap bitmap = new PackedBitmap(8, 4);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                bitmap.set(x, y, true);
+            }
+        }
+
+        // When
+        PackedBitmap scaled = RasterHelper.scaleNearest(bitmap, 4);
+
+        // Then
+        assertEquals(4, scaled.getWidth());
+        assertEquals(2, scaled.getHeight());
+        assertTrue(scaled.get(1, 1));
+        assertFalse(scaled.get(2, 1));
+    }
+
+    // Draft tier halves the rows
+    @Test
+    public void test_draft_quality_halves_rows() {
+        // Given
+        GrayBitmap gray = new GrayBitmap(64, 40);
+        for (int i = 0; i < gray.getPixels().length; i++) {
+            gray.getPixels()[i] = (byte) (i % 64 * 4);
+        }
+
+        // When
+        PackedBitmap high = RasterHelper.convertToBlackAndWhite(gray, 384, PrintQuality.HIGH);
+        PackedBitmap standard = RasterHelper.convertToBlackAndWhite(gray, 384, PrintQuality.STANDARD);
+        PackedBitmap draft = RasterHelper.convertToBlackAndWhite(gray, 384, PrintQuality.DRAFT);
+
+        // Then
+        assertEquals(40, high.getHeight());
+        assertEquals(40, standard.getHeight());
+        assertEquals(20, draft.getHeight());
+        assertTrue(draft.get(0, 0));
+        assertFalse(draft.get(63, 0));
+    }
+
+    // Quarter turns move the top of the bitmap to the right or to the left, row bands match the whole rotation
+    @Test
+    public void test_rotate_quarter_turns() {
+        // Given: a 20x10 bitmap with its top row black
+        PackedBitmap bitmap = new PackedBitmap(20, 10);
+        for (int x = 0; x < 20; x++) {
+            bitmap.set(x, 0, true);
+        }
+
+        // When
+        PackedBitmap clockwise = RasterHelper.rotate(bitmap, Rotation.CLOCKWISE_90, false);
+        PackedBitmap counterclockwise = RasterHelper.rotate(bitmap, Rotation.CLOCKWISE_270, false);
+        byte[] band = new byte[3 * clockwise.getStride()];
+        RasterHelper.rotateBand(bitmap, Rotation.CLOCKWISE_90, false, 5, 3, band, clockwise.getStride(), 0);
+
+        // Then
+        assertEquals(10, clockwise.getWidth());
+        assertEquals(20, clockwise.getHeight());
+        for (int y = 0; y < 20; y++) {
+            assertTrue(clockwise.get(9, y));
+            assertFalse(clockwise.get(8, y));
+            assertTrue(counterclockwise.get(0, y));
+            assertFalse(counterclockwise.get(1, y));
+        }
+        assertArrayEquals(Arrays.copyOfRange(clockwise.getData(), 5 * clockwise.getStride(), 8 * clockwise.getStride()),
+                band);
+    }
+}
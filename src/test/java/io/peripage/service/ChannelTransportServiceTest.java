@@ -0,0 +1,126 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ChannelTransportServiceTest {
+
+    // Rows sent to a file path are written after the reset request
+    @Test
+    public void test_print_rows_to_file(@TempDir Path directory) throws Exception {
+        // Given
+        Path output = Files.createFile(directory.resolve("rfcomm.bin"));
+        PrinterService printer = new PrinterService(PrinterType.A6, new ChannelTransportService(output));
+        byte[] row = new byte[PrinterType.A6.getRowBytes()];
+        Arrays.fill(row, (byte) 0xaa);
+
+        // When
+        printer.connect();
+        printer.printRowBytesList(List.of(row, row));
+        printer.disconnect();
+
+        // Then
+        byte[] sent = Files.readAllBytes(output);
+        byte[] reset = hexStringToByteArray(TransportService.RESET_REQUEST);
+        assertArrayEquals(reset, Arrays.copyOf(sent, reset.length));
+        assertEquals((byte) 0xaa, sent[sent.length - 1]);
+    }
+
+    // Responses already received on a socket are returned without blocking
+    @Test
+    public void test_ask_printer_over_socket() throws Exception {
+        // Given
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            ChannelTransportService transport = new ChannelTransportService((InetSocketAddress) server.getLocalAddress());
+            transport.connect();
+            try (SocketChannel printerSide = server.accept()) {
+                ByteBuffer reset = ByteBuffer.allocate(16);
+                while (reset.hasRemaining()) {
+                    printerSide.read(reset);
+                }
+                printerSide.write(ByteBuffer.wrap("PeriPage+BC5F".getBytes()));
+
+                // When
+                byte[] response = transport.askPrinter(hexStringToByteArray("10ff3011"));
+
+                // Then
+                assertEquals("PeriPage+BC5F", new String(response));
+            } finally {
+                transport.disconnect();
+            }
+        }
+    }
+
+    // Line feed bytes of a row reach the printer unchanged through a terminal
+    @Test
+    public void test_print_rows_through_pty() throws Exception {
+        // Given: a pseudo-terminal, whose master side dumps what it receives in hex
+        assumeTrue(Files.isExecutable(Path.of("/usr/bin/python3")) && Files.isExecutable(Path.of("/usr/bin/stty")));
+        String dump = String.join("\n",
+                "import os, pty, select",
+                "master, slave = pty.openpty()",
+                "print(os.ttyname(slave), flush=True)",
+                "data = b''",
+                "while select.select([master], [], [], 1.0)[0]:",
+                "    data += os.read(master, 4096)",
+                "print(data.hex(), flush=True)");
+        Process python = new ProcessBuilder("/usr/bin/python3", "-c", dump).start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(python.getInputStream()));
+        Path terminal = Path.of(output.readLine());
+        PrinterService printer = new PrinterService(PrinterType.A6, new ChannelTransportService(terminal));
+        byte[] row = new byte[PrinterType.A6.getRowBytes()];
+        Arrays.fill(row, (byte) 0x0a);
+
+        // When
+        printer.connect();
+        printer.printRowBytesList(List.of(row));
+        printer.disconnect();
+
+        // Then: the reset requests of the connection and of the chunk, the raster header and the row,
+        // without any `0d` added
+        byte[] received = HexFormat.of().parseHex(output.readLine());
+        python.waitFor();
+        assertEquals(2 * 16 + 8 + row.length, received.length);
+        assertArrayEquals(row, Arrays.copyOfRange(received, 2 * 16 + 8, received.length));
+    }
+
+    // A mistyped device path fails instead of printing into a new file
+    @Test
+    public void test_missing_device_is_rejected(@TempDir Path directory) {
+        // Given
+        Path missing = directory.resolve("rfcomm9");
+        ChannelTransportService transport = new ChannelTransportService(missing);
+
+        // When
+        IOException error = assertThrows(IOException.class, transport::connect);
+
+        // Then
+        assertTrue(error instanceof NoSuchFileException);
+        assertFalse(Files.exists(missing));
+    }
+}
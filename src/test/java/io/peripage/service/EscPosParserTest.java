@@ -0,0 +1,116 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EscPosParserTest {
+
+    // Records the parsed commands as strings
+    static class RecordingListener implements EscPosParser.Listener {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void rasterRow(byte[] row, int mode) {
+            events.add("row " + Arrays.toString(row) + " " + mode);
+        }
+
+        @Override
+        public void rasterEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public void feed(int dots) {
+            events.add("feed " + dots);
+        }
+
+        @Override
+        public void feedLines(int lines) {
+            events.add("lines " + lines);
+        }
+
+        @Override
+        public void text(String line) {
+            events.add("text " + line);
+        }
+    }
+
+    // Commands split across any number of slices are parsed the same way
+    @Test
+    public void test_stream_parsed_byte_by_byte() throws Exception {
+        // Given: ESC @, bold on, "Hi" LF, GS v 0 of 2 rows of 2 bytes, ESC J 10, "Bye", GS V 66 0, ESC d 2
+        byte[] stream = hexStringToByteArray("1b401b4501" + "48690a" + "1d76300002000200" + "0102" + "0304"
+                + "1b4a0a" + "427965" + "1d564200" + "1b6402");
+        RecordingListener listener = new RecordingListener();
+        EscPosParser parser = new EscPosParser(listener);
+
+        // When
+        for (int i = 0; i < stream.length; i++) {
+            parser.parse(stream, i, 1);
+        }
+        parser.close();
+
+        // Then
+        assertEquals(List.of("text Hi", "row [1, 2] 0", "row [3, 4] 0", "end", "feed 10", "text Bye", "lines 2"),
+                listener.events);
+    }
+
+    // The payloads of bit images, 2D codes, graphics and barcodes are skipped, not printed as text
+    @Test
+    public void test_payload_commands_skipped() throws Exception {
+        // Given: ESC * of 3 columns, a QR code storing "AB", GS 8 L of 3 bytes, CODE39 "AB" NUL,
+        // CODE128 "AB", then "OK" LF, split in slices of 3 bytes
+        byte[] stream = hexStringToByteArray("1b2a00030041420a" + "1d286b0500315030" + "4142"
+                + "1d384c03000000" + "41420a" + "1d6b04" + "41420a00" + "1d6b4902" + "4142" + "4f4b0a");
+        RecordingListener listener = new RecordingListener();
+        EscPosParser parser = new EscPosParser(listener);
+
+        // When
+        for (int i = 0; i < stream.length; i += 3) {
+            parser.parse(stream, i, Math.min(3, stream.length - i));
+        }
+        parser.close();
+
+        // Then
+        assertEquals(List.of("text OK"), listener.events);
+    }
+
+    // Rows narrower than the printer are padded to its row width
+    @Test
+    public void test_rows_padded_to_printer_width() throws Exception {
+        // Given: a 2 rows image of 2 bytes per row
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        EscPosTranslator translator = new EscPosTranslator(printer);
+        byte[] stream = hexStringToByteArray("1d76300002000200" + "ffff" + "ffff");
+
+        // When
+        new EscPosParser(translator).parse(stream, 0, stream.length);
+        translator.close();
+
+        // Then: a 48 bytes wide raster header and the 2 padded rows
+        byte[] sent = transport.sent.toByteArray();
+        byte[] header = hexStringToByteArray("1d7630003000" + "0200");
+        int at = indexOf(sent, header);
+        assertEquals(sent.length - 2 * 48, at + header.length);
+        assertEquals((byte) 0xff, sent[at + header.length + 1]);
+        assertEquals(0, sent[at + header.length + 2]);
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,47 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotFolderTest {
+
+    // Dropped files are printed in arrival order and archived
+    @Test
+    public void test_dropped_files_are_printed_in_order_and_archived(@TempDir Path directory) throws Exception {
+        // Given
+        Path root = directory.resolve("hot-folder");
+        Path archive = directory.resolve("archive");
+        Path last = archive.resolve("office").resolve("third.txt");
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        try (PrintQueue queue = new PrintQueue("test", new PrinterService(PrinterType.A6, transport));
+             HotFolder hotFolder = new HotFolder(root, archive, 2)) {
+            hotFolder.addPrinter("office", queue);
+            hotFolder.start();
+
+            // When
+            for (String name : new String[]{"first", "second", "third"}) {
+                Path temp = Files.writeString(root.resolve("office").resolve(name + ".tmp"), name.toUpperCase(), StandardCharsets.UTF_8);
+                Files.move(temp, root.resolve("office").resolve(name + ".txt"));
+            }
+            for (int i = 0; i < 100 && !Files.exists(last); i++) {
+                Thread.sleep(100);
+            }
+        }
+
+        // Then
+        String sent = new String(transport.sent.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertTrue(Files.exists(last));
+        assertTrue(Files.exists(archive.resolve("office").resolve("first.txt")));
+        assertFalse(Files.exists(root.resolve("office").resolve("first.txt")));
+        assertTrue(sent.indexOf("FIRST") < sent.indexOf("SECOND") && sent.indexOf("SECOND") < sent.indexOf("THIRD"));
+        assertTrue(sent.indexOf("FIRST") >= 0);
+    }
+}
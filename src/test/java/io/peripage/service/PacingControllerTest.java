@@ -0,0 +1,98 @@
+package io.peripage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PacingControllerTest {
+
+    private static final long FAST_WRITE = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCKED_WRITE = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // Fixed controller keeps the historical row delay whatever happens
+    @Test
+    public void test_fixed_controller_keeps_delay() throws Exception {
+        // Given
+        PacingController pacing = PacingController.fixed();
+
+        // When
+        pacing.afterRow(BLOCKED_WRITE);
+        pacing.reportLostRows(3);
+
+        // Then
+        assertEquals(PacingController.DEFAULT_ROW_DELAY_NANOS, pacing.getRowDelayNanos());
+        assertEquals(1, pacing.getBlockedWrites());
+        assertEquals(3, pacing.getLostRows());
+    }
+
+    // Adaptive controller speeds up after a streak of fast writes
+    @Test
+    public void test_adaptive_controller_speeds_up() throws Exception {
+        // Given
+        PacingController pacing = PacingController.adaptive();
+        long initial = pacing.getRowDelayNanos();
+
+        // When
+        for (int i = 0; i < 64; i++) {
+            pacing.afterRow(FAST_WRITE);
+        }
+
+        // Then
+        assertTrue(pacing.getRowDelayNanos() < initial);
+        assertTrue(pacing.getAchievedRowsPerSecond() > 0);
+    }
+
+    // Adaptive controller slows down on blocked writes and lost rows
+    @Test
+    public void test_adaptive_controller_slows_down() throws Exception {
+        // Given
+        PacingController pacing = PacingController.adaptive(1000);
+        long initial = pacing.getRowDelayNanos();
+
+        // When
+        pacing.afterRow(BLOCKED_WRITE);
+        long afterBlocked = pacing.getRowDelayNanos();
+        pacing.reportLostRows(1);
+
+        // Then
+        assertEquals(initial * 3 / 2, afterBlocked);
+        assertEquals(afterBlocked * 2, pacing.getRowDelayNanos());
+    }
+
+    // Adaptive controller created from a calibrated rate never paces faster than it
+    @Test
+    public void test_calibrated_rate_is_a_ceiling() throws Exception {
+        // Given
+        PacingController pacing = PacingController.adaptive(1000);
+        long calibrated = pacing.getRowDelayNanos();
+
+        // When
+        pacing.afterRow(BLOCKED_WRITE);
+        for (int i = 0; i < 500; i++) {
+            pacing.afterRow(FAST_WRITE);
+        }
+
+        // Then
+        assertTrue(pacing.getTargetRowsPerSecond() <= 1000);
+        assertEquals(calibrated, pacing.getRowDelayNanos());
+    }
+
+    // The achieved rate counts the pauses between rows
+    @Test
+    public void test_achieved_rate_includes_pauses() throws Exception {
+        // Given
+        PacingController pacing = PacingController.constant(100);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            pacing.afterRow(FAST_WRITE);
+        }
+
+        // Then
+        assertTrue(pacing.getAchievedRowsPerSecond() <= 101);
+        assertEquals(PacingController.DEFAULT_ROW_DELAY_NANOS, pacing.getRowDelayNanos());
+    }
+}
@@ -0,0 +1,63 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrintFileTest {
+
+    // Replaying a print-ready file sends exactly the bytes of a live print
+    @Test
+    public void test_replay_matches_live_print(@TempDir Path directory) throws Exception {
+        // Given
+        List<byte[]> rows = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            rows.add(new byte[]{(byte) i, 1, 2});
+        }
+        Path file = directory.resolve("replay" + PrintFile.EXTENSION);
+        PrintFile.write(file, PrinterType.A6, rows, PrinterService.DEFAULT_CHUNK_ROWS, PrinterService.ResetMode.EACH_CHUNK);
+        PrinterServiceTest.RecordingTransportService live = new PrinterServiceTest.RecordingTransportService();
+        PrinterServiceTest.RecordingTransportService replay = new PrinterServiceTest.RecordingTransportService();
+
+        // When
+        new PrinterService(PrinterType.A6, live).printRowBytesList(rows);
+        PrintFile printFile = PrintFile.open(file);
+        new PrinterService(PrinterType.A6, replay).printFile(printFile);
+
+        // Then
+        assertEquals(300, printFile.getHeight());
+        assertArrayEquals(live.sent.toByteArray(), replay.sent.toByteArray());
+    }
+
+    // A truncated file is rejected when opened, not in the middle of the print
+    @Test
+    public void test_truncated_file_is_rejected(@TempDir Path directory) throws Exception {
+        // Given
+        List<byte[]> rows = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            rows.add(new byte[]{(byte) i});
+        }
+        Path file = directory.resolve("truncated" + PrintFile.EXTENSION);
+        PrintFile.write(file, PrinterType.A6, rows, PrinterService.DEFAULT_CHUNK_ROWS, PrinterService.ResetMode.ONCE);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        // When
+        IOException error = assertThrows(IOException.class, () -> PrintFile.open(file));
+
+        // Then
+        assertTrue(error.getMessage().contains("wire bytes"));
+    }
+}
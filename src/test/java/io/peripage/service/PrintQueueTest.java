@@ -0,0 +1,153 @@
+package io.peripage.service;
+
+import io.peripage.domain.JobStatus;
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrintQueueTest {
+
+    private static List<byte[]> rows(int count) {
+        List<byte[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new byte[48]);
+        }
+        return rows;
+    }
+
+    private static PrintQueue queue(PrinterServiceTest.RecordingTransportService transport) {
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        printer.setChunkRows(5);
+        return new PrintQueue("test", printer);
+    }
+
+    // An urgent job preempts a long job at a chunk boundary, the long job resumes afterwards
+    @Test
+    public void test_urgent_job_preempts_running_job() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        try (PrintQueue queue = queue(transport)) {
+            CountDownLatch started = new CountDownLatch(1);
+            PrintTask poster = queue.submit("poster", printer -> {
+                started.countDown();
+                printer.printRowBytesList(rows(50));
+            });
+            started.await(5, TimeUnit.SECONDS);
+
+            // When
+            PrintTask receipt = queue.submit("receipt", 10, PrintQueue.DEFAULT_TENANT, printer -> printer.printRowBytesList(rows(5)));
+            receipt.getCompletion().get(5, TimeUnit.SECONDS);
+
+            // Then
+            poster.getCompletion().get(5, TimeUnit.SECONDS);
+            assertEquals(JobStatus.DONE, poster.getStatus());
+            assertTrue(receipt.getFinishedAt().isBefore(poster.getFinishedAt()));
+        }
+    }
+
+    // A job interrupting itself is cancelled, and the queue keeps printing the next jobs
+    @Test
+    public void test_interrupted_job_does_not_stop_queue() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        try (PrintQueue queue = queue(transport)) {
+            PrintTask interrupted = queue.submit("interrupted", printer -> {
+                throw new InterruptedException("Stopped by the job");
+            });
+            while (!interrupted.getStatus().isFinished()) {
+                Thread.sleep(10);
+            }
+
+            // When
+            PrintTask next = queue.submit("next", printer -> printer.printRowBytesList(rows(5)));
+            next.getCompletion().get(5, TimeUnit.SECONDS);
+
+            // Then
+            assertEquals(JobStatus.CANCELLED, interrupted.getStatus());
+            assertEquals(JobStatus.DONE, next.getStatus());
+        }
+    }
+
+    // Cancelling a running job stops it at the next chunk boundary
+    @Test
+    public void test_cancel_running_job() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        try (PrintQueue queue = queue(transport)) {
+            CountDownLatch started = new CountDownLatch(1);
+            PrintTask poster = queue.submit("poster", printer -> {
+                started.countDown();
+                printer.printRowBytesList(rows(100));
+            });
+            started.await(5, TimeUnit.SECONDS);
+
+            // When
+            assertTrue(poster.cancel());
+            poster.getCompletion().handle((result, error) -> null).get(5, TimeUnit.SECONDS);
+
+            // Then
+            assertEquals(JobStatus.CANCELLED, poster.getStatus());
+            assertTrue(transport.sent.size() < 100 * 48);
+        }
+    }
+
+    // Jobs of the same priority are served in turn per tenant
+    @Test
+    public void test_tenants_are_served_in_turn() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try (PrintQueue queue = queue(transport)) {
+            CountDownLatch release = new CountDownLatch(1);
+            queue.submit("blocker", printer -> release.await());
+
+            // When
+            queue.submit("a1", 0, "a", printer -> order.add("a1"));
+            queue.submit("a2", 0, "a", printer -> order.add("a2"));
+            queue.submit("a3", 0, "a", printer -> order.add("a3"));
+            PrintTask last = queue.submit("b1", 0, "b", printer -> order.add("b1"));
+            release.countDown();
+            last.getCompletion().get(5, TimeUnit.SECONDS);
+            queue.close();
+
+            // Then
+            assertEquals(List.of("a1", "b1", "a2", "a3"), order);
+        }
+    }
+
+    // A retried job is coalesced onto the original job instead of being printed again
+    @Test
+    public void test_duplicate_jobs_are_coalesced() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        List<String> printed = Collections.synchronizedList(new ArrayList<>());
+        byte[] receipt = "Total 12.50".getBytes();
+        try (PrintQueue queue = queue(transport)) {
+            PrintTask original = queue.submitOnce("order-1", receipt, "text", 0, PrintQueue.DEFAULT_TENANT,
+                    printer -> printed.add("original"));
+
+            // When
+            PrintTask sameContent = queue.submitOnce(null, receipt.clone(), "text", 0, PrintQueue.DEFAULT_TENANT,
+                    printer -> printed.add("same content"));
+            PrintTask sameKey = queue.submitOnce("order-1", "Total 12.5".getBytes(), "text", 0,
+                    PrintQueue.DEFAULT_TENANT, printer -> printed.add("same key"));
+            PrintTask other = queue.submitOnce("order-2", "Total 3.00".getBytes(), "text", 0,
+                    PrintQueue.DEFAULT_TENANT, printer -> printed.add("other"));
+            other.getCompletion().get(5, TimeUnit.SECONDS);
+
+            // Then
+            assertSame(original, sameContent);
+            assertSame(original, sameKey);
+            assertEquals(List.of("original", "other"), printed);
+        }
+    }
+}
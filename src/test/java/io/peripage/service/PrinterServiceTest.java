@@ -0,0 +1,306 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrintJob;
+import io.peripage.domain.PrintQuality;
+import io.peripage.domain.PrinterType;
+import io.peripage.raster.GrayBitmap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrinterServiceTest {
+
+    private static final byte[] RESET = hexStringToByteArray("10fffe01000000000000000000000000");
+
+    // Records every byte sent to the printer
+    static class RecordingTransportService extends TransportService {
+
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+        RecordingTransportService() {
+            super("00:00:00:00:00:00");
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+            sent.write(byteseq, offset, length);
+        }
+    }
+
+    private static List<byte[]> rows(int count, int rowBytes) {
+        List<byte[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] row = new byte[rowBytes];
+            Arrays.fill(row, (byte) i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static int count(byte[] data, byte[] pattern) {
+        int count = 0;
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Short images are sent with the historical one byte header values
+    @Test
+    public void test_short_image_byte_stream() throws Exception {
+        // Given
+        RecordingTransportService transport = new RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+
+        // When
+        printer.printRowBytesList(rows(10, 48));
+
+        // Then
+        byte[] sent = transport.sent.toByteArray();
+        assertArrayEquals(RESET, Arrays.copyOfRange(sent, 0, RESET.length));
+        assertArrayEquals(hexStringToByteArray("1d76300030000a00"),
+                Arrays.copyOfRange(sent, RESET.length, RESET.length + 8));
+        assertEquals(RESET.length + 8 + 10 * 48, sent.length);
+    }
+
+    // Short images produce the same byte stream in default and large raster modes
+    @Test
+    public void test_short_image_identical_in_large_mode() throws Exception {
+        // Given
+        RecordingTransportService legacy = new RecordingTransportService();
+        RecordingTransportService large = new RecordingTransportService();
+        PrinterService legacyPrinter = new PrinterService(PrinterType.A6p, legacy);
+        PrinterService largePrinter = new PrinterService(PrinterType.A6p, large);
+        largePrinter.setLargeRasterMode(true);
+
+        // When
+        legacyPrinter.printRowBytesList(rows(0xff, 72));
+        largePrinter.printRowBytesList(rows(0xff, 72));
+
+        // Then
+        assertArrayEquals(legacy.sent.toByteArray(), large.sent.toByteArray());
+    }
+
+    // Long images are sent with a 2 bytes height and a single reset in large raster mode
+    @Test
+    public void test_long_image_in_large_mode() throws Exception {
+        // Given
+        RecordingTransportService transport = new RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        printer.setLargeRasterMode(true);
+
+        // When
+        printer.printRowBytesList(rows(300, 48));
+
+        // Then
+        byte[] sent = transport.sent.toByteArray();
+        assertEquals(1, count(sent, RESET));
+        assertArrayEquals(hexStringToByteArray("1d76300030002c01"), Arrays.copyOfRange(sent, RESET.length, RESET.length + 8));
+        assertEquals(RESET.length + 8 + 300 * 48, sent.length);
+    }
+
+    // Long images are split in 0xff rows chunks with a reset per chunk by default
+    @Test
+    public void test_long_image_in_default_mode() throws Exception {
+        // Given
+        RecordingTransportService transport = new RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+
+        // When
+        printer.printRowBytesList(rows(300, 48));
+
+        // Then
+        byte[] sent = transport.sent.toByteArray();
+        assertEquals(2, count(sent, RESET));
+        assertEquals(2 * (RESET.length + 8) + 300 * 48, sent.length);
+    }
+
+    // Rows read from an off-heap raster with a larger stride are sent like the equivalent row list
+    @Test
+    public void test_direct_raster_matches_row_list() throws Exception {
+        // Given
+        List<byte[]> rows = rows(20, 48);
+        ByteBuffer raster = ByteBuffer.allocateDirect(20 * 64);
+        for (byte[] row : rows) {
+            raster.put(row).put(new byte[16]);
+        }
+        raster.flip();
+        RecordingTransportService fromList = new RecordingTransportService();
+        RecordingTransportService fromRaster = new RecordingTransportService();
+
+        // When
+        new PrinterService(PrinterType.A6, fromList).printRowBytesList(rows);
+        new PrinterService(PrinterType.A6, fromRaster).printRaster(raster, 64, 20);
+
+        // Then
+        assertArrayEquals(fromList.sent.toByteArray(), fromRaster.sent.toByteArray());
+        assertEquals(0, raster.position());
+    }
+
+    // Draft images are converted at half the height and each row is sent twice
+    @Test
+    public void test_draft_image_sends_rows_twice() throws Exception {
+        // Given: an image whose top half is black
+        RecordingTransportService transport = new RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        GrayBitmap gray = new GrayBitmap(384, 20);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 384; x++) {
+                gray.set(x, y, 0);
+            }
+        }
+
+        // When
+        printer.printGrayBitmap(gray, PrintQuality.DRAFT);
+
+        // Then: 10 converted rows sent twice each, in the normal raster mode
+        byte[] sent = transport.sent.toByteArray();
+        assertArrayEquals(hexStringToByteArray("1d76300030001400"),
+                Arrays.copyOfRange(sent, RESET.length, RESET.length + 8));
+        assertEquals(RESET.length + 8 + 20 * 48, sent.length);
+        assertEquals((byte) 0xff, sent[RESET.length + 8 + 9 * 48]);
+        assertEquals(0, sent[RESET.length + 8 + 10 * 48]);
+    }
+
+    // A composite job is sent with a single reset, its sections chunked as one raster and its feeds as blank rows
+    @Test
+    public void test_print_job_single_raster() throws Exception {
+        // Given: an image, a QR code, a feed and rows taller than a chunk
+        RecordingTransportService transport = new RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        BufferedImage image = new BufferedImage(384, 10, BufferedImage.TYPE_INT_RGB);
+        PrintJob job = PrintJob.builder(PrinterType.A6)
+                .image(image)
+                .qr("https://example.com")
+                .feed(20)
+                .rows(rows(300, 48))
+                .build();
+        int feedStart = job.getHeight() - 300 - 20;
+
+        // When
+        printer.printJob(job);
+
+        // Then: the reset, then 0xff rows chunks with their raster header, and nothing else
+        byte[] sent = transport.sent.toByteArray();
+        assertEquals(1, count(sent, RESET));
+        assertArrayEquals(RESET, Arrays.copyOfRange(sent, 0, RESET.length));
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int offset = RESET.length;
+        for (int row = 0; row < job.getHeight(); ) {
+            int height = Math.min(0xff, job.getHeight() - row);
+            assertArrayEquals(hexStringToByteArray("1d7630003000"), Arrays.copyOfRange(sent, offset, offset + 6));
+            assertEquals(height, (sent[offset + 6] & 0xff) | (sent[offset + 7] & 0xff) << 8);
+            payload.write(sent, offset + 8, height * 48);
+            offset += 8 + height * 48;
+            row += height;
+        }
+        assertEquals(sent.length, offset);
+        byte[] rows = payload.toByteArray();
+        for (int i = 0; i < job.getHeight(); i++) {
+            assertArrayEquals(job.getRows().get(i), Arrays.copyOfRange(rows, i * 48, (i + 1) * 48));
+        }
+        assertArrayEquals(new byte[20 * 48], Arrays.copyOfRange(rows, feedStart * 48, (feedStart + 20) * 48));
+    }
+
+    // A job started while connecting is converted at once and sent once the printer is connected
+    @Test
+    public void test_job_waits_for_async_connection() throws Exception {
+        // Given: a printer taking 200 ms to connect
+        List<String> events = new ArrayList<>();
+        RecordingTransportService transport = new RecordingTransportService() {
+            @Override
+            public void connect() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (events) {
+                    events.add("connected");
+                }
+            }
+
+            @Override
+            public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+                synchronized (events) {
+                    if (events.isEmpty()) {
+                        events.add("sent before connected");
+                    }
+                }
+                super.tellPrinter(byteseq, offset, length);
+            }
+        };
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+
+        // When
+        printer.connectAsync();
+        printer.printRowBytesList(rows(10, 48));
+
+        // Then
+        assertEquals(List.of("connected"), events);
+        assertEquals(RESET.length + 8 + 10 * 48, transport.sent.size());
+    }
+
+    // Calibration saves the fastest rate the printer delivered, less the margin
+    @Test
+    public void test_calibration_saves_delivered_rate(@TempDir Path directory) throws Exception {
+        // Given: a printer losing rows paced faster than 400 rows per second, which garble its answers
+        PrinterService[] printer = new PrinterService[1];
+        RecordingTransportService transport = new RecordingTransportService() {
+            private byte[] answer = new byte[0];
+
+            @Override
+            public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+                if (Arrays.equals(byteseq, offset, offset + length, hexStringToByteArray("10ff20f1"), 0, 4)) {
+                    boolean lost = printer[0].getPacingController().getRowDelayNanos() < 2_500_000;
+                    answer = (lost ? "V2.1\u0000\u0000" : "V2.11_304dpi").getBytes();
+                }
+                super.tellPrinter(byteseq, offset, length);
+            }
+
+            @Override
+            public synchronized byte[] listenPrinter() {
+                byte[] received = answer;
+                answer = new byte[0];
+                return received;
+            }
+        };
+        printer[0] = new PrinterService(PrinterType.A6, transport);
+        PacingProfileStore store = new PacingProfileStore(directory.resolve("pacing.properties"));
+
+        // When
+        double rowsPerSecond = printer[0].calibratePacing(30, store);
+
+        // Then: 337.5 rows per second were delivered, 506 were not
+        assertEquals(270, rowsPerSecond, 0.001);
+        assertEquals(270, store.getRowsPerSecond(PrinterType.A6, "V2.11_304dpi").getAsDouble(), 0.001);
+        assertTrue(printer[0].getPacingController().isAdaptive());
+    }
+}
@@ -0,0 +1,59 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RasterSubscriberTest {
+
+    private static final int RESET_LENGTH = 16;
+    private static final int HEADER_LENGTH = 8;
+
+    // Rows are grouped in full chunks with a single reset
+    @Test
+    public void test_streams_rows_in_chunks() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        printer.setChunkRows(100);
+        RasterSubscriber subscriber = printer.rowSubscriber(Duration.ofSeconds(10));
+
+        // When
+        try (SubmissionPublisher<byte[]> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(subscriber);
+            for (int i = 0; i < 250; i++) {
+                publisher.submit(new byte[48]);
+            }
+        }
+        subscriber.getCompletion().get(30, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(RESET_LENGTH + 3 * HEADER_LENGTH + 250 * 48, transport.sent.size());
+    }
+
+    // A partial chunk is sent once the latency bound is reached
+    @Test
+    public void test_flushes_partial_chunk_after_latency() throws Exception {
+        // Given
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService();
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        RasterSubscriber subscriber = printer.rowSubscriber(Duration.ofMillis(20));
+
+        try (SubmissionPublisher<byte[]> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(subscriber);
+
+            // When
+            publisher.submit(new byte[48]);
+            publisher.submit(new byte[48]);
+            Thread.sleep(500);
+
+            // Then
+            assertEquals(RESET_LENGTH + HEADER_LENGTH + 2 * 48, transport.sent.size());
+        }
+    }
+}
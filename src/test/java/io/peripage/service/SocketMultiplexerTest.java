@@ -0,0 +1,172 @@
+package io.peripage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SocketMultiplexerTest {
+
+    // Several printers share the event loop, each one receiving all of its bytes in order
+    @Test
+    public void test_printers_share_event_loop() throws Exception {
+        // Given: 3 printers, each sent 4 times more than the outbound queue holds
+        int printers = 3;
+        byte[] block = new byte[64 * 1024];
+        try (ServerSocketChannel server = ServerSocketChannel.open();
+             SocketMultiplexer multiplexer = new SocketMultiplexer()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            List<CompletableFuture<Integer>> received = new ArrayList<>();
+            List<MultiplexedTransportService> transports = new ArrayList<>();
+            for (int i = 0; i < printers; i++) {
+                MultiplexedTransportService transport =
+                        multiplexer.transport((InetSocketAddress) server.getLocalAddress());
+                transport.connect();
+                SocketChannel printerSide = server.accept();
+                received.add(CompletableFuture.supplyAsync(() -> readAll(printerSide)));
+                transports.add(transport);
+            }
+
+            // When
+            for (int round = 0; round < 4; round++) {
+                for (MultiplexedTransportService transport : transports) {
+                    block[0] = (byte) round;
+                    transport.tellPrinter(block);
+                }
+            }
+            for (MultiplexedTransportService transport : transports) {
+                transport.disconnect();
+            }
+
+            // Then: the reset request and the 4 blocks
+            for (CompletableFuture<Integer> bytes : received) {
+                assertEquals(16 + 4 * block.length, (int) bytes.get());
+            }
+        }
+    }
+
+    // A response is returned as soon as the printer stops sending
+    @Test
+    public void test_ask_printer_frames_response() throws Exception {
+        // Given
+        try (ServerSocketChannel server = ServerSocketChannel.open();
+             SocketMultiplexer multiplexer = new SocketMultiplexer()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            MultiplexedTransportService transport =
+                    multiplexer.transport((InetSocketAddress) server.getLocalAddress());
+            transport.connect();
+            try (SocketChannel printerSide = server.accept()) {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        ByteBuffer request = ByteBuffer.allocate(16 + 4);
+                        while (request.hasRemaining()) {
+                            printerSide.read(request);
+                        }
+                        printerSide.write(ByteBuffer.wrap("PeriPage+BC5F".getBytes()));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+                // When
+                long start = System.nanoTime();
+                byte[] response = transport.askPrinter(hexStringToByteArray("10ff3011"));
+
+                // Then
+                assertEquals("PeriPage+BC5F", new String(response));
+                assertTrue(System.nanoTime() - start < 250_000_000L);
+            } finally {
+                transport.disconnect();
+            }
+        }
+    }
+
+    // The response deadline starts once the query left the queue, not while it waits behind raster data
+    @Test
+    public void test_ask_printer_behind_queued_write() throws Exception {
+        // Given: a printer reading nothing for 400 ms while 4 MB of rows are being sent
+        byte[] query = hexStringToByteArray("10ff3011");
+        try (ServerSocketChannel server = ServerSocketChannel.open();
+             SocketMultiplexer multiplexer = new SocketMultiplexer()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            MultiplexedTransportService transport =
+                    multiplexer.transport((InetSocketAddress) server.getLocalAddress());
+            transport.connect();
+            try (SocketChannel printerSide = server.accept()) {
+                CompletableFuture<Void> printer = CompletableFuture.runAsync(() -> {
+                    try {
+                        Thread.sleep(400);
+                        answerAfter(printerSide, query, "PeriPage+BC5F".getBytes());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                CompletableFuture<Void> rows = CompletableFuture.runAsync(() -> {
+                    try {
+                        for (int i = 0; i < 64; i++) {
+                            transport.tellPrinter(new byte[64 * 1024]);
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                Thread.sleep(100);
+
+                // When
+                byte[] response = transport.askPrinter(query);
+
+                // Then
+                assertEquals("PeriPage+BC5F", new String(response));
+                rows.get();
+                transport.disconnect();
+                printer.get();
+            }
+        }
+    }
+
+    /**
+     * Read everything, answering once the query was received.
+     */
+    private static void answerAfter(SocketChannel printerSide, byte[] query, byte[] answer) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        byte[] tail = new byte[0];
+        boolean answered = false;
+        while (printerSide.read(buffer.clear()) >= 0) {
+            byte[] read = new byte[tail.length + buffer.position()];
+            System.arraycopy(tail, 0, read, 0, tail.length);
+            System.arraycopy(buffer.array(), 0, read, tail.length, buffer.position());
+            for (int i = 0; !answered && i + query.length <= read.length; i++) {
+                if (Arrays.equals(read, i, i + query.length, query, 0, query.length)) {
+                    printerSide.write(ByteBuffer.wrap(answer));
+                    answered = true;
+                }
+            }
+            tail = Arrays.copyOfRange(read, Math.max(0, read.length - query.length + 1), read.length);
+        }
+    }
+
+    private static int readAll(SocketChannel printerSide) {
+        try (printerSide) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (printerSide.read(buffer.clear()) >= 0) {
+                bytes.write(buffer.array(), 0, buffer.position());
+            }
+            return bytes.size();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.peripage.service;
+
+import io.peripage.domain.PrinterStatus;
+import io.peripage.domain.PrinterType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.peripage.helper.ByteHelper.hexStringToByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatusPollerTest {
+
+    private static final byte[] RESET = hexStringToByteArray("10fffe01000000000000000000000000");
+    private static final byte[] BATTERY = hexStringToByteArray("10ff50f1");
+    private static final byte[] NAME = hexStringToByteArray("10ff3011");
+
+    // Queries only go between commands, and their answers are published
+    @Test
+    public void test_queries_between_commands() throws Exception {
+        // Given: a printer answering queries, slowly printing 3 jobs with idle gaps
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService() {
+            private byte[] answer = new byte[0];
+
+            @Override
+            public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+                if (Arrays.equals(byteseq, offset, offset + length, BATTERY, 0, BATTERY.length)) {
+                    answer = new byte[]{0, 64};
+                } else if (Arrays.equals(byteseq, offset, offset + length, NAME, 0, NAME.length)) {
+                    answer = "PeriPage+DF7A".getBytes();
+                } else {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.tellPrinter(byteseq, offset, length);
+            }
+
+            @Override
+            public synchronized byte[] listenPrinter() {
+                byte[] received = answer;
+                answer = new byte[0];
+                return received;
+            }
+        };
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        CountDownLatch charged = new CountDownLatch(1);
+        List<PrinterStatus> published = new ArrayList<>();
+
+        // When
+        try (StatusPoller poller = new StatusPoller("test", printer, Duration.ofMillis(1))) {
+            poller.addListener(status -> {
+                published.add(status);
+                if (status.getBattery() == 64) {
+                    charged.countDown();
+                }
+            });
+            for (int job = 0; job < 3; job++) {
+                List<byte[]> rows = new ArrayList<>();
+                for (int i = 0; i < 300; i++) {
+                    rows.add(new byte[48]);
+                }
+                printer.printRowBytesList(rows);
+                Thread.sleep(300);
+            }
+            assertTrue(charged.await(2, TimeUnit.SECONDS));
+
+            // Then
+            assertEquals("PeriPage+DF7A", poller.getStatus().getName());
+            assertTrue(poller.getStatus().isConnected());
+        }
+        byte[] sent = transport.sent.toByteArray();
+        int queries = 0;
+        for (int i = 0; i < sent.length; ) {
+            if (startsWith(sent, i, RESET)) {
+                i += RESET.length;
+            } else if (startsWith(sent, i, BATTERY) || startsWith(sent, i, NAME)) {
+                i += BATTERY.length;
+                queries++;
+            } else {
+                // Raster header `1d7630 00 rowBytes[2] height[2]`, then the rows
+                assertTrue(startsWith(sent, i, hexStringToByteArray("1d763000")));
+                i += 8 + 48 * ((sent[i + 6] & 0xff) | (sent[i + 7] & 0xff) << 8);
+            }
+        }
+        assertTrue(queries >= 2);
+        assertTrue(published.size() >= 2);
+    }
+
+    // A battery answer read instead of the name is not published as the name
+    @Test
+    public void test_stolen_answer_not_published_as_name() throws Exception {
+        // Given: a printer answering the battery level to every query
+        PrinterServiceTest.RecordingTransportService transport = new PrinterServiceTest.RecordingTransportService() {
+            private byte[] answer = new byte[0];
+
+            @Override
+            public synchronized void tellPrinter(byte[] byteseq, int offset, int length) {
+                answer = new byte[]{0, 64};
+                super.tellPrinter(byteseq, offset, length);
+            }
+
+            @Override
+            public synchronized byte[] listenPrinter() {
+                byte[] received = answer;
+                answer = new byte[0];
+                return received;
+            }
+        };
+        PrinterService printer = new PrinterService(PrinterType.A6, transport);
+        CountDownLatch charged = new CountDownLatch(1);
+
+        // When
+        try (StatusPoller poller = new StatusPoller("test", printer, Duration.ofMillis(1))) {
+            poller.addListener(status -> {
+                if (status.getBattery() == 64) {
+                    charged.countDown();
+                }
+            });
+            assertTrue(charged.await(2, TimeUnit.SECONDS));
+
+            // Then
+            assertNull(poller.getStatus().getName());
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        return offset + prefix.length <= data.length
+                && Arrays.equals(data, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+}